@@ -0,0 +1,130 @@
+package org.jortvanschijndel.resourcepackplus.bench;
+
+import org.apache.commons.io.FileUtils;
+import org.jortvanschijndel.resourcepackplus.util.CompressionPolicy;
+import org.jortvanschijndel.resourcepackplus.util.HashUtil;
+import org.jortvanschijndel.resourcepackplus.util.MultiDigest;
+import org.jortvanschijndel.resourcepackplus.util.PackBuildOptions;
+import org.jortvanschijndel.resourcepackplus.util.ZipUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the pack build paths on a {@link SyntheticPack}: repackaging the zipball (from a file, with
+ * raw copy and streamed), extracting the result and hashing it (SHA-1 alone, and all pack digests in one
+ * read). Scores are whole packs per second; multiply by {@code totalMb} for MB/s. Run with {@code -prof gc} (the profile's default) to see allocation per pack.
+ * <p>
+ * The build options match the defaults in config.yml: reproducible, PNG and OGG stored, JSON at level 9.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PackBuildBenchmark {
+
+    @Param("64")
+    public int totalMb;
+
+    @Param("2000")
+    public int models;
+
+    @Param("6")
+    public int depth;
+
+    /**
+     * Compression threads, like {@code build.threads}.
+     */
+    @Param("1")
+    public int threads;
+
+    private File workDir;
+    private File zipball;
+    private File packZip;
+    private File outZip;
+    private File extractDir;
+    private PackBuildOptions options;
+    private PackBuildOptions rawCopyOptions;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("rpp-bench").toFile();
+        zipball = new File(workDir, "zipball.zip");
+        new SyntheticPack(totalMb, models, depth).writeZipball(zipball);
+
+        CompressionPolicy compression = new CompressionPolicy(6, Map.of("png", 0, "ogg", 0, "json", 9, "mcmeta", 9));
+        options = new PackBuildOptions(true, null, threads, compression, false);
+        rawCopyOptions = new PackBuildOptions(true, null, threads, compression, true);
+
+        // A built pack as input for the extract and hash benchmarks
+        packZip = new File(workDir, "pack.zip");
+        ZipUtil.repackageZipball(zipball, packZip, options);
+        outZip = new File(workDir, "out.zip");
+        extractDir = new File(workDir, "extracted");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public long repackageZipball() throws IOException {
+        ZipUtil.repackageZipball(zipball, outZip, options);
+        return outZip.length();
+    }
+
+    @Benchmark
+    public long repackageZipballRawCopy() throws IOException {
+        ZipUtil.repackageZipball(zipball, outZip, rawCopyOptions);
+        return outZip.length();
+    }
+
+    @Benchmark
+    public String repackageZipballStream() throws IOException {
+        try (InputStream in = new FileInputStream(zipball)) {
+            return ZipUtil.repackageZipballStream(in, outZip, options, MultiDigest.of());
+        }
+    }
+
+    @Benchmark
+    public File unzipToDirectory() throws IOException {
+        // Files are overwritten in place, so every iteration writes the full pack
+        ZipUtil.unzipToDirectory(packZip, extractDir);
+        return extractDir;
+    }
+
+    @Benchmark
+    public String sha1OfFile() throws Exception {
+        return HashUtil.sha1OfFile(packZip);
+    }
+
+    /**
+     * Everything the hosts may need (SHA-1, SHA-256, Dropbox content hash) from a single read of the file.
+     */
+    @Benchmark
+    public String allDigestsOfFile() throws Exception {
+        MultiDigest digests = MultiDigest.of(MultiDigest.Kind.SHA256, MultiDigest.Kind.DROPBOX).updateFromFile(packZip);
+        return digests.hex(MultiDigest.Kind.SHA1) + digests.hex(MultiDigest.Kind.SHA256) + digests.hex(MultiDigest.Kind.DROPBOX);
+    }
+}
@@ -0,0 +1,120 @@
+package org.jortvanschijndel.resourcepackplus.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a resource pack shaped like the real ones, packed the way GitHub serves a zipball (everything
+ * inside one {@code owner-repo-sha/} folder). It mixes thousands of small, compressible JSON models with
+ * large PNG and OGG files that don't compress, spread over deeply nested folders. Content comes from a
+ * fixed seed, so every run benchmarks the same bytes.
+ * <p>
+ * Can also be run on its own to write a pack for manual testing:
+ * {@code java ... SyntheticPack <out.zip> [totalMb] [models] [depth]}.
+ *
+ * @param totalMb target size of all files together; large PNG/OGG files make up what the models don't
+ * @param models  number of JSON model files
+ * @param depth   folder levels below {@code assets/minecraft/models/block/}
+ */
+public record SyntheticPack(int totalMb, int models, int depth) {
+
+    private static final String ROOT = "owner-pack-0123456789abcdef0123456789abcdef01234567/";
+    private static final int LARGE_FILE_BYTES = 2 * 1024 * 1024;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] OGG_SIGNATURE = {'O', 'g', 'g', 'S'};
+
+    /**
+     * Writes the pack as a GitHub-style zipball.
+     */
+    public void writeZipball(File out) throws IOException {
+        Random random = new Random(42);
+        long budget = (long) totalMb * 1024 * 1024;
+        try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(out), 65536))) {
+            addDirectory(zos, ROOT);
+            budget -= addFile(zos, ROOT + "pack.mcmeta",
+                    "{\"pack\":{\"pack_format\":34,\"description\":\"Synthetic benchmark pack\"}}".getBytes(StandardCharsets.UTF_8));
+
+            for (int i = 0; i < models; i++) {
+                budget -= addFile(zos, ROOT + modelFolder(i) + "model_" + i + ".json", model(i, random));
+            }
+
+            // The rest of the budget goes to large textures and sounds, alternating
+            for (int i = 0; budget > 0; i++) {
+                int size = (int) Math.min(LARGE_FILE_BYTES, budget);
+                boolean texture = i % 2 == 0;
+                String name = texture
+                        ? "assets/minecraft/textures/block/" + "t" + (i % 7) + "/texture_" + i + ".png"
+                        : "assets/minecraft/sounds/" + "s" + (i % 5) + "/sound_" + i + ".ogg";
+                budget -= addFile(zos, ROOT + name, incompressible(size, texture ? PNG_SIGNATURE : OGG_SIGNATURE, random));
+            }
+        }
+    }
+
+    /**
+     * Spreads models over {@code depth} nested folders, a few dozen files per folder.
+     */
+    private String modelFolder(int index) {
+        StringBuilder path = new StringBuilder("assets/minecraft/models/block/");
+        int bucket = index / 50;
+        for (int level = 0; level < depth; level++) {
+            path.append("d").append(level).append('_').append(bucket % 4).append('/');
+            bucket /= 4;
+        }
+        return path.toString();
+    }
+
+    private static byte[] model(int index, Random random) {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\n  \"parent\": \"minecraft:block/cube_all\",\n  \"textures\": {\n");
+        json.append("    \"all\": \"minecraft:block/texture_").append(index).append("\",\n");
+        json.append("    \"particle\": \"minecraft:block/texture_").append(index).append("\"\n  },\n");
+        json.append("  \"elements\": [\n");
+        int elements = 1 + random.nextInt(4);
+        for (int e = 0; e < elements; e++) {
+            json.append("    {\"from\": [0, 0, 0], \"to\": [16, ").append(1 + random.nextInt(16))
+                    .append(", 16], \"faces\": {\"up\": {\"texture\": \"#all\", \"uv\": [0, 0, 16, 16]}}}")
+                    .append(e + 1 < elements ? ",\n" : "\n");
+        }
+        json.append("  ]\n}\n");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] incompressible(int size, byte[] signature, Random random) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        System.arraycopy(signature, 0, data, 0, Math.min(signature.length, size));
+        return data;
+    }
+
+    private static void addDirectory(ZipOutputStream zos, String name) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.closeEntry();
+    }
+
+    private static int addFile(ZipOutputStream zos, String name, byte[] data) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(data);
+        zos.closeEntry();
+        return data.length;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticPack <out.zip> [totalMb] [models] [depth]");
+            return;
+        }
+        SyntheticPack pack = new SyntheticPack(
+                args.length > 1 ? Integer.parseInt(args[1]) : 64,
+                args.length > 2 ? Integer.parseInt(args[2]) : 2000,
+                args.length > 3 ? Integer.parseInt(args[3]) : 6);
+        File out = new File(args[0]);
+        pack.writeZipball(out);
+        System.out.println("Wrote " + out + " (" + out.length() + " bytes)");
+    }
+}
@@ -2,16 +2,34 @@ package org.jortvanschijndel.resourcepackplus;
 
 import org.bukkit.Bukkit;
 import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jortvanschijndel.resourcepackplus.commands.RppCommand;
 import org.jortvanschijndel.resourcepackplus.listeners.JoinListener;
+import org.jortvanschijndel.resourcepackplus.listeners.PackStatusListener;
+import org.jortvanschijndel.resourcepackplus.service.AutoUpdater;
+import org.jortvanschijndel.resourcepackplus.service.PackHttpServer;
+import org.jortvanschijndel.resourcepackplus.service.PackRollout;
+import org.jortvanschijndel.resourcepackplus.service.PackSelector;
+import org.jortvanschijndel.resourcepackplus.service.PackSendPacer;
+import org.jortvanschijndel.resourcepackplus.service.PackStatusTracker;
+import org.jortvanschijndel.resourcepackplus.service.UpdateJobQueue;
 import org.jortvanschijndel.resourcepackplus.storage.PackStore;
 import org.jortvanschijndel.resourcepackplus.storage.TokenStore;
 import org.bstats.bukkit.Metrics;
+import org.bstats.charts.AdvancedPie;
+import org.bstats.charts.SimplePie;
+import org.jortvanschijndel.resourcepackplus.util.PackSnapshot;
 import org.jortvanschijndel.resourcepackplus.util.ServerPropertiesUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 
@@ -20,9 +38,15 @@ public class ResourcepackPlus extends JavaPlugin {
     private static ResourcepackPlus instance;
     private TokenStore tokenStore;
     private PackStore packStore;
+    private PackHttpServer httpServer;
+    private PackSendPacer sendPacer;
+    private PackRollout rollout;
+    private final PackStatusTracker statusTracker = new PackStatusTracker();
+    private PackSelector packSelector;
+    private UpdateJobQueue updateJobs;
+    private AutoUpdater autoUpdater;
     private Logger log;
-    private String resourcePackUrl;
-    private String resourcePackSha1;
+    private volatile Map<String, PackSnapshot> packs = Map.of();
 
     public static ResourcepackPlus getInstance() {
         return instance;
@@ -35,6 +59,39 @@ public class ResourcepackPlus extends JavaPlugin {
         return packStore;
     }
 
+    /**
+     * The embedded pack server, or {@code null} when httpServer.enabled is off or it failed to start.
+     */
+    public PackHttpServer getHttpServer() {
+        return httpServer;
+    }
+
+    /**
+     * Paces pack sends to joining players, or {@code null} when joinPacing.enabled is off.
+     */
+    public PackSendPacer getSendPacer() {
+        return sendPacer;
+    }
+
+    /**
+     * Pushes new packs to online players, or {@code null} when rollout.enabled is off.
+     */
+    public PackRollout getRollout() {
+        return rollout;
+    }
+
+    public PackStatusTracker getStatusTracker() {
+        return statusTracker;
+    }
+
+    public PackSelector getPackSelector() {
+        return packSelector;
+    }
+
+    public UpdateJobQueue getUpdateJobs() {
+        return updateJobs;
+    }
+
     @Override
     public void onEnable() {
         instance = this;
@@ -53,50 +110,178 @@ public class ResourcepackPlus extends JavaPlugin {
             RppCommand rpp = new RppCommand(this);
             cmd.setExecutor(rpp);
             cmd.setTabCompleter(rpp);
+            updateJobs = new UpdateJobQueue(new File(getDataFolder(), "work"),
+                    getConfig().getInt("updateJobs.maxQueued", 5), rpp::runUpdate);
 
             // Register chat listener for Dropbox auth code
             getServer().getPluginManager().registerEvents(rpp, this);
             getServer().getPluginManager().registerEvents(new JoinListener(this), this);
+            getServer().getPluginManager().registerEvents(new PackStatusListener(this), this);
         } else {
             log.severe("Command 'rpp' not found in plugin.yml! Disabling plugin.");
             Bukkit.getPluginManager().disablePlugin(this);
             return;
         }
 
-        resourcePackUrl = packStore.getUrl();
-        resourcePackSha1 = packStore.getSha1();
+        Map<String, PackSnapshot> stored = new LinkedHashMap<>();
+        for (String name : packStore.getPackNames()) {
+            stored.put(name, PackSnapshot.of(name, packStore.getUrl(name), packStore.getSha1(name)));
+            log.info("Found resource pack '" + name + "': " + packStore.getUrl(name));
+        }
+        packs = Collections.unmodifiableMap(stored);
+        packSelector = PackSelector.fromConfig(getConfig().getMapList("packRules"), this::getPacks, statusTracker);
+
+        if (getConfig().getBoolean("httpServer.enabled", false)) {
+            startHttpServer();
+        }
+
+        ConfigurationSection pacing = getConfig().getConfigurationSection("joinPacing");
+        if (pacing != null && pacing.getBoolean("enabled", true)) {
+            sendPacer = PackSendPacer.fromConfig(this, pacing);
+            sendPacer.start();
+        }
+
+        ConfigurationSection rolloutConfig = getConfig().getConfigurationSection("rollout");
+        if (rolloutConfig != null && rolloutConfig.getBoolean("enabled", true)) {
+            rollout = PackRollout.fromConfig(this, statusTracker, packSelector, rolloutConfig);
+        }
 
-        if(resourcePackUrl != null){
-            log.info("Found resource pack in server.properties: " + resourcePackUrl);
+        ConfigurationSection autoUpdate = getConfig().getConfigurationSection("autoUpdate");
+        if (autoUpdate != null && autoUpdate.getBoolean("enabled", false)) {
+            autoUpdater = AutoUpdater.fromConfig(this, autoUpdate);
+            autoUpdater.start();
         }
 
         int pluginId = 26937;
         Metrics metrics = new Metrics(this, pluginId);
-
+        metrics.addCustomChart(new SimplePie("pack_load_time", () -> {
+            long median = statusTracker.getLoaded().percentile(50);
+            if (median < 0) return null;
+            if (median < 5_000) return "< 5s";
+            if (median < 15_000) return "5-15s";
+            if (median < 30_000) return "15-30s";
+            if (median < 60_000) return "30-60s";
+            return "> 60s";
+        }));
+        metrics.addCustomChart(new AdvancedPie("pack_status", () -> {
+            Map<String, Integer> values = new HashMap<>();
+            statusTracker.getOutcomes().forEach((status, count) -> {
+                if (count > 0) values.put(status.name().toLowerCase(Locale.ROOT), (int) Math.min(Integer.MAX_VALUE, count));
+            });
+            return values;
+        }));
+        metrics.addCustomChart(new SimplePie("update_time", () -> {
+            long median = updateJobs.getHistory().getTotal().percentile(50);
+            if (median < 0) return null;
+            if (median < 10_000) return "< 10s";
+            if (median < 30_000) return "10-30s";
+            if (median < 60_000) return "30-60s";
+            if (median < 300_000) return "1-5m";
+            return "> 5m";
+        }));
+        // Where update time goes: median milliseconds per stage
+        metrics.addCustomChart(new AdvancedPie("update_stages", () -> {
+            Map<String, Integer> values = new HashMap<>();
+            updateJobs.getHistory().getStages().forEach((stage, window) -> {
+                long median = window.percentile(50);
+                if (median > 0) values.put(stage, (int) Math.min(Integer.MAX_VALUE, median));
+            });
+            return values;
+        }));
 
         log.info("ResourcepackPlus enabled.");
     }
 
 
+    private void startHttpServer() {
+        String bind = getConfig().getString("httpServer.bind", "0.0.0.0");
+        int port = getConfig().getInt("httpServer.port", 8085);
+        String publicUrl = getConfig().getString("httpServer.publicUrl", "");
+        if (publicUrl == null || publicUrl.isBlank()) {
+            log.warning("httpServer.publicUrl is not set; the embedded pack server stays off.");
+            return;
+        }
+
+        PackHttpServer server = new PackHttpServer(new File(getDataFolder(), "packs"), this::getResourcePackSha1,
+                publicUrl, new InetSocketAddress(bind, port),
+                getConfig().getInt("httpServer.maxConnections", 32), log);
+        try {
+            server.start();
+        } catch (IOException e) {
+            log.severe("Failed to start the pack server on " + bind + ":" + port + ": " + e.getMessage());
+            return;
+        }
+        httpServer = server;
+        log.info("Serving resource packs on " + bind + ":" + port + " (" + publicUrl + ")");
+
+        // Prefer our own copy over the stored (e.g. Dropbox) link for packs we still have on disk
+        for (PackSnapshot current : packs.values()) {
+            if (server.packFile(current.name(), current.sha1()).isFile()) {
+                setResourcePack(current.name(), server.urlFor(current.name(), current.sha1()), current.sha1());
+            }
+        }
+    }
+
     @Override
     public void onDisable() {
+        if (autoUpdater != null) {
+            autoUpdater.stop();
+        }
+        if (updateJobs != null) {
+            updateJobs.shutdown();
+        }
+        if (httpServer != null) {
+            httpServer.stop();
+        }
+        if (sendPacer != null) {
+            sendPacer.stop();
+        }
+        if (rollout != null) {
+            rollout.cancel();
+        }
         log.info("ResourcepackPlus disabled.");
     }
 
-    public String getResourcePackUrl() {
-        return resourcePackUrl;
+    /**
+     * All published packs by name, the default pack first. The map is never modified; publishing replaces it.
+     */
+    public Map<String, PackSnapshot> getPacks() {
+        return packs;
     }
 
-    public String getResourcePackSha1() {
-        return resourcePackSha1;
+    /**
+     * The named pack, or {@code null} when it has not been published yet.
+     */
+    public PackSnapshot getPack(String name) {
+        return packs.get(name);
+    }
+
+    public String getResourcePackUrl() {
+        PackSnapshot current = packs.get(PackSnapshot.DEFAULT);
+        return current != null ? current.url() : null;
     }
 
-    public void setResourcePackUrl(String url) {
-        this.resourcePackUrl = url;
+    public String getResourcePackSha1() {
+        PackSnapshot current = packs.get(PackSnapshot.DEFAULT);
+        return current != null ? current.sha1() : null;
     }
 
-    public void setResourcePackSha1(String sha1) {
-        this.resourcePackSha1 = sha1;
+    /**
+     * Switches a named pack to a new URL and hash. The whole pack map is replaced at once,
+     * so no reader sees a mixed pair.
+     */
+    public synchronized void setResourcePack(String name, String url, String sha1) {
+        Map<String, PackSnapshot> next = new LinkedHashMap<>();
+        if (name.equals(PackSnapshot.DEFAULT)) {
+            // Keep the default pack first, as the bottom layer when no packRules are set
+            next.put(name, PackSnapshot.of(name, url, sha1));
+        }
+        next.putAll(packs);
+        next.put(name, PackSnapshot.of(name, url, sha1));
+        packs = Collections.unmodifiableMap(next);
+        if (packSelector != null) {
+            packSelector.invalidate();
+        }
     }
 
 
@@ -3,7 +3,6 @@ package org.jortvanschijndel.resourcepackplus.commands;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import io.papermc.paper.event.player.AsyncChatEvent;
-import net.kyori.adventure.text.minimessage.MiniMessage;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.apache.commons.io.FileUtils;
 import org.bukkit.Bukkit;
@@ -11,15 +10,30 @@ import org.bukkit.command.*;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
-import org.bukkit.scheduler.BukkitRunnable;
 import org.jetbrains.annotations.NotNull;
 import org.jortvanschijndel.resourcepackplus.ResourcepackPlus;
+import org.jortvanschijndel.resourcepackplus.service.DropboxPackHost;
 import org.jortvanschijndel.resourcepackplus.service.DropboxService;
 import org.jortvanschijndel.resourcepackplus.service.GitHubService;
+import org.jortvanschijndel.resourcepackplus.service.LocalPackHost;
+import org.jortvanschijndel.resourcepackplus.service.PackHost;
+import org.jortvanschijndel.resourcepackplus.service.PackHttpServer;
+import org.jortvanschijndel.resourcepackplus.service.PackPublisher;
+import org.jortvanschijndel.resourcepackplus.service.PackRollout;
+import org.jortvanschijndel.resourcepackplus.service.PackStatusTracker;
+import org.jortvanschijndel.resourcepackplus.service.S3PackHost;
+import org.jortvanschijndel.resourcepackplus.service.SourceSync;
+import org.jortvanschijndel.resourcepackplus.service.UpdateHistory;
+import org.jortvanschijndel.resourcepackplus.service.UpdateJob;
+import org.jortvanschijndel.resourcepackplus.service.UpdateStage;
 import org.jortvanschijndel.resourcepackplus.storage.PackStore;
+import org.jortvanschijndel.resourcepackplus.storage.SourceTreeCache;
 import org.jortvanschijndel.resourcepackplus.storage.TokenStore;
-import org.jortvanschijndel.resourcepackplus.util.HashUtil;
+import org.jortvanschijndel.resourcepackplus.util.LatencyWindow;
 import org.jortvanschijndel.resourcepackplus.util.Messaging;
+import org.jortvanschijndel.resourcepackplus.util.MultiDigest;
+import org.jortvanschijndel.resourcepackplus.util.PackBuildOptions;
+import org.jortvanschijndel.resourcepackplus.util.PackSnapshot;
 import org.jortvanschijndel.resourcepackplus.util.ServerPropertiesUtil;
 import org.jortvanschijndel.resourcepackplus.util.ZipUtil;
 
@@ -27,9 +41,12 @@ import java.io.*;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.text.SimpleDateFormat;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 
 
@@ -68,7 +85,10 @@ public class RppCommand implements CommandExecutor, TabCompleter, Listener {
             case "github" -> handleGithub(sender, args);
             case "dropbox" -> handleDropbox(sender, args);
             case "dropbox-path" -> handleDropboxPath(sender, args);
+            case "s3" -> handleS3(sender, args);
             case "update" -> handleUpdate(sender, args);
+            case "stats" -> handleStats(sender);
+            case "jobs" -> handleJobs(sender, args);
             default -> help(sender, label);
         }
         return true;
@@ -79,7 +99,128 @@ public class RppCommand implements CommandExecutor, TabCompleter, Listener {
         Messaging.sendMini(sender, "<yellow>/" + label + " github <accesstoken> <gray>— Set or learn how to get a GitHub Personal Access Token.");
         Messaging.sendMini(sender, "<yellow>/" + label + " dropbox <appkey> <appsecret> <gray>— Set or learn how to get a Dropbox access token.");
         Messaging.sendMini(sender, "<yellow>/" + label + " dropbox-path <path> <gray>— Set Dropbox folder path for uploads.");
-        Messaging.sendMini(sender, "<yellow>/" + label + " update <GitHub URL> <Branch> <gray>— Build & upload resourcepack, update server.properties, and restart.");
+        Messaging.sendMini(sender, "<yellow>/" + label + " s3 <accesskey> <secretkey> <gray>— Set keys for an S3-compatible pack host.");
+        Messaging.sendMini(sender, "<yellow>/" + label + " update <GitHub URL> <Branch> [pack | pack:<new pack>] [force] <gray>— Build & upload a resourcepack (the default one unless a pack name is given) and send it to online players.");
+        Messaging.sendMini(sender, "<yellow>/" + label + " stats <gray>— Show resource pack load times and outcomes.");
+        Messaging.sendMini(sender, "<yellow>/" + label + " jobs [cancel <id>] <gray>— List running and recent updates, or cancel one.");
+    }
+
+    private void handleJobs(CommandSender sender, String[] args) {
+        if (args.length >= 3 && args[1].equalsIgnoreCase("cancel")) {
+            int id;
+            try {
+                id = Integer.parseInt(args[2].replace("#", ""));
+            } catch (NumberFormatException e) {
+                Messaging.sendMini(sender, "<red>[RPP] Usage: /rpp jobs cancel <id>");
+                return;
+            }
+            if (!plugin.getUpdateJobs().cancel(id)) {
+                Messaging.sendMini(sender, "<red>[RPP] No queued or running update #" + id + ".");
+            }
+            return;
+        }
+
+        List<UpdateJob> jobs = plugin.getUpdateJobs().getJobs();
+        if (jobs.isEmpty()) {
+            Messaging.sendMini(sender, "<gray>[RPP] No updates have run since startup.");
+            return;
+        }
+        Messaging.sendMini(sender, "<aqua>[RPP] Updates:");
+        long now = System.currentTimeMillis();
+        for (UpdateJob job : jobs) {
+            String color = switch (job.getState()) {
+                case RUNNING -> "<yellow>";
+                case DONE -> "<green>";
+                case FAILED -> "<red>";
+                default -> "<gray>";
+            };
+            String time = switch (job.getState()) {
+                case QUEUED -> "waiting " + (now - job.getSubmittedAt()) / 1000 + "s";
+                case RUNNING -> "running " + (now - job.getStartedAt()) / 1000 + "s";
+                default -> job.getStartedAt() > 0 ? "took " + (job.getFinishedAt() - job.getStartedAt()) / 1000 + "s" : "never started";
+            };
+            Messaging.sendMini(sender, color + "#" + job.getId() + " " + job.getState().name().toLowerCase(Locale.ROOT)
+                    + " <white>" + job.getPack() + " <gray>← " + job.getUrl() + " @ " + job.getBranch()
+                    + (job.isForce() ? " (force)" : "") + " <gray>(" + time + ")");
+            if (job.getState() == UpdateJob.State.RUNNING) {
+                Messaging.sendMini(sender, "<gray>   " + job.getLastMessage());
+            }
+        }
+    }
+
+    private void handleStats(CommandSender sender) {
+        PackStatusTracker tracker = plugin.getStatusTracker();
+        Messaging.sendMini(sender, "<aqua>[RPP] Resource pack stats:");
+        sendLatency(sender, "Accepted", tracker.getAccepted());
+        sendLatency(sender, "Downloaded", tracker.getDownloaded());
+        sendLatency(sender, "Loaded", tracker.getLoaded());
+
+        String outcomes = tracker.getOutcomes().entrySet().stream()
+                .filter(e -> e.getValue() > 0)
+                .map(e -> e.getKey().name().toLowerCase(Locale.ROOT) + " " + e.getValue())
+                .collect(Collectors.joining(", "));
+        Messaging.sendMini(sender, "<gray>Outcomes: <white>" + (outcomes.isEmpty() ? "none yet" : outcomes));
+
+        PackRollout rollout = plugin.getRollout();
+        if (rollout != null) {
+            for (String packName : rollout.getRunning()) {
+                String counts = rollout.getCounts(packName).entrySet().stream()
+                        .map(e -> e.getKey().name().toLowerCase(Locale.ROOT) + " " + e.getValue())
+                        .collect(Collectors.joining(", "));
+                Messaging.sendMini(sender, "<gray>Rollout of " + packName + " in progress: <white>" + counts);
+            }
+        }
+        if (plugin.getSendPacer() != null) {
+            Messaging.sendMini(sender, "<gray>Join queue: <white>" + plugin.getSendPacer().getQueueSize() + " player(s)");
+        }
+        sendUpdateStats(sender, plugin.getUpdateJobs().getHistory());
+    }
+
+    private void sendUpdateStats(CommandSender sender, UpdateHistory history) {
+        UpdateJob last = history.getLast();
+        if (last == null) {
+            Messaging.sendMini(sender, "<gray>Update stages: <white>no builds since startup");
+            return;
+        }
+        long[] total = history.getTotal().percentiles(50, 90);
+        Messaging.sendMini(sender, "<aqua>[RPP] Update stages <gray>(last " + history.getTotal().size() + " builds, p50 / p90):");
+        Messaging.sendMini(sender, "<gray>Total: <white>" + formatMillis(total[0]) + " / " + formatMillis(total[1]));
+        history.getStages().forEach((stage, window) -> {
+            long[] p = window.percentiles(50, 90);
+            Messaging.sendMini(sender, "<gray>" + stage + ": <white>" + formatMillis(p[0]) + " / " + formatMillis(p[1]));
+        });
+
+        Messaging.sendMini(sender, "<gray>Last build <yellow>#" + last.getId() + " <gray>(" + last.getPack() + "):");
+        for (UpdateStage.Result r : last.getStages()) {
+            StringBuilder line = new StringBuilder("<gray>   " + r.name() + ": <white>" + formatMillis(r.millis()));
+            if (r.bytes() > 0) {
+                line.append(", ").append(formatBytes(r.bytes())).append(" <gray>(").append(formatBytes(r.bytesPerSecond())).append("/s)<white>");
+            }
+            if (r.entries() > 0) {
+                line.append(", ").append(r.entries()).append(" entries");
+            }
+            Messaging.sendMini(sender, line.toString());
+        }
+    }
+
+    private static String formatMillis(long millis) {
+        return millis < 1000 ? millis + "ms" : String.format(Locale.ROOT, "%.1fs", millis / 1000.0);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    private void sendLatency(CommandSender sender, String stage, LatencyWindow window) {
+        long[] p = window.percentiles(50, 90, 99);
+        if (p[0] < 0) {
+            Messaging.sendMini(sender, "<gray>" + stage + ": <white>no samples yet");
+            return;
+        }
+        Messaging.sendMini(sender, "<gray>" + stage + ": <white>p50 " + p[0] + "ms, p90 " + p[1] + "ms, p99 " + p[2] + "ms"
+                + " <gray>(last " + window.size() + " of " + window.total() + ")");
     }
 
     private void handleGithub(CommandSender sender, String[] args) {
@@ -102,7 +243,7 @@ public class RppCommand implements CommandExecutor, TabCompleter, Listener {
         CompletableFuture.runAsync(() -> {
                     System.out.println("[DEBUG] Async GitHub token validation started...");
                     try {
-                        GitHubService gh = new GitHubService(token);
+                        GitHubService gh = new GitHubService(token, status -> Messaging.sendMini(sender, "<gray>[RPP] " + status));
                         String login = gh.getLoginName();
                         tokens.setGithubToken(token);
                         Messaging.sendMini(sender, "<green>[RPP] GitHub authentication successful as: <yellow>" + login);
@@ -254,191 +395,493 @@ public class RppCommand implements CommandExecutor, TabCompleter, Listener {
         Messaging.sendMini(sender, "<red>Warning: If you run multiple servers, do NOT point to the same Dropbox path.");
     }
 
+    private void handleS3(CommandSender sender, String[] args) {
+        if (args.length < 3) {
+            Messaging.sendMini(sender, "<yellow>[RPP] Usage: /rpp s3 <accessKey> <secretKey>");
+            Messaging.sendMini(sender, "<gray>Set s3.endpoint, s3.bucket and add s3 to hosts in config.yml.");
+            return;
+        }
+        tokens.setS3Credentials(args[1].trim(), args[2].trim());
+        Messaging.sendMini(sender, "<green>[RPP] S3 keys saved.");
+    }
+
     private void handleUpdate(CommandSender sender, String[] args) {
-        // Args: update <GitHub URL> <Branch>
+        // Args: update <GitHub URL> <Branch> [pack | pack:<new pack>] [force]
         if (args.length < 3) {
-            Messaging.sendMini(sender, "<red>[RPP] Usage: /rpp update <GitHub URL> <Branch>");
+            Messaging.sendMini(sender, "<red>[RPP] Usage: /rpp update <GitHub URL> <Branch> [pack | pack:<new pack>] [force]");
             return;
         }
         if (!tokens.hasGithubToken()) {
             Messaging.sendMini(sender, "<red>[RPP] Missing GitHub token. Use /rpp github <token> first.");
             return;
         }
-        if (!tokens.hasDropboxCredentials()) {
-            Messaging.sendMini(sender, "<red>[RPP] Missing Dropbox token. Use /rpp dropbox <appkey> <appsecret> first.");
+        final List<String> targets = hostTargets();
+        String hostProblem = validateHosts(targets);
+        if (hostProblem != null) {
+            Messaging.sendMini(sender, "<red>[RPP] " + hostProblem);
             return;
         }
-        String path = plugin.getConfig().getString("dropboxPath");
-        if (path == null || path.isBlank()) {
-            Messaging.sendMini(sender, "<red>[RPP] Missing Dropbox path. Use /rpp dropbox-path <path>.");
+
+        // A bare name must be a pack that already exists or is configured, so a typo never publishes a new pack
+        boolean force = false;
+        String pack = null;
+        Set<String> known = knownPackNames();
+        for (int i = 3; i < args.length; i++) {
+            String arg = args[i].toLowerCase(Locale.ROOT);
+            String name = null;
+            if (arg.equals("force")) {
+                force = true;
+            } else if (arg.equals("restart")) {
+                Messaging.sendMini(sender, "<gray>[RPP] 'restart' is no longer needed: online players get the new pack right away.");
+            } else if (arg.startsWith("pack:")) {
+                name = arg.substring("pack:".length());
+            } else if (known.contains(arg)) {
+                name = arg;
+            } else {
+                Messaging.sendMini(sender, "<red>[RPP] Unknown option '" + args[i] + "'. Use force, an existing pack name ("
+                        + String.join(", ", known) + ") or pack:<name> for a new pack.");
+                return;
+            }
+            if (name != null) {
+                if (pack != null && !pack.equals(name)) {
+                    Messaging.sendMini(sender, "<red>[RPP] Give only one pack name.");
+                    return;
+                }
+                pack = name;
+            }
+        }
+        if (pack == null) {
+            pack = PackSnapshot.DEFAULT;
+        }
+        if (!PackSnapshot.isValidName(pack)) {
+            Messaging.sendMini(sender, "<red>[RPP] Pack names may only use a-z, 0-9, - and _ (up to 32 characters).");
             return;
         }
+        try {
+            plugin.getUpdateJobs().submit(args[1], args[2], pack, force, sender);
+        } catch (RejectedExecutionException e) {
+            Messaging.sendMini(sender, "<red>[RPP] Too many updates are waiting. Try again later, or see /rpp jobs.");
+        }
+    }
 
-        boolean restart = args.length == 4 && args[3].equalsIgnoreCase("restart");
+    /**
+     * Packs that may be named without the {@code pack:} prefix: the default pack, every stored pack and
+     * every pack referenced in packRules or autoUpdate.watch.
+     */
+    private Set<String> knownPackNames() {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(PackSnapshot.DEFAULT);
+        names.addAll(packStore.getPackNames());
+        for (Map<?, ?> rule : plugin.getConfig().getMapList("packRules")) {
+            if (rule.get("packs") instanceof List<?> packs) {
+                packs.forEach(p -> names.add(String.valueOf(p).toLowerCase(Locale.ROOT)));
+            }
+        }
+        for (Map<?, ?> watch : plugin.getConfig().getMapList("autoUpdate.watch")) {
+            if (watch.get("pack") != null) {
+                names.add(String.valueOf(watch.get("pack")).toLowerCase(Locale.ROOT));
+            }
+        }
+        names.removeIf(name -> !PackSnapshot.isValidName(name));
+        return names;
+    }
 
-        String ghUrl = args[1];
-        String branch = args[2];
-        Messaging.sendMini(sender, "<gray>[RPP] Starting update…");
-        Messaging.sendMini(sender, "<gray> - Verifying credentials & inputs");
+    /**
+     * Builds and publishes one pack. Runs on the update queue's worker thread, one job at a time.
+     */
+    public void runUpdate(UpdateJob job) throws Exception {
+        String ghUrl = job.getUrl();
+        String branch = job.getBranch();
+        String packName = job.getPack();
+        boolean forceBuild = job.isForce();
+        // Config may have changed while the job was queued
+        List<String> targets = hostTargets();
+        String hostProblem = validateHosts(targets);
+        if (hostProblem != null) {
+            job.fail("<red>[RPP] " + hostProblem);
+            return;
+        }
 
-        // Heavy lifting async
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                try {
-                    // Step 1: Login services
-                    Messaging.sendMini(sender, "<gray>[RPP] Logging into GitHub…");
-                    GitHubService gh = new GitHubService(tokens.getGithubToken());
-                    String repoSlug = gh.parseOwnerRepoFromUrl(ghUrl);
-                    if (repoSlug == null) {
-                        Messaging.sendMini(sender, "<red>[RPP] Could not parse GitHub URL. Expected like: https://github.com/<owner>/<repo>");
-                        return;
-                    }
-                    Messaging.sendMini(sender, "<green>[RPP] GitHub repo detected: <yellow" + repoSlug + " <gray>(branch " + branch + ")");
+        // Step 1: Login services
+        job.report("<gray>[RPP] Logging into GitHub…");
+        GitHubService gh = new GitHubService(tokens.getGithubToken(), status -> job.report("<yellow>[RPP] " + status));
+        String repoSlug = GitHubService.parseOwnerRepoFromUrl(ghUrl);
+        if (repoSlug == null) {
+            job.fail("<red>[RPP] Could not parse GitHub URL. Expected like: https://github.com/<owner>/<repo>");
+            return;
+        }
+        job.report("<green>[RPP] GitHub repo detected: <yellow" + repoSlug + " <gray>(branch " + branch + ", pack " + packName + ")");
 
-                    Messaging.sendMini(sender, "<gray>[RPP] Logging into Dropbox…");
-                    DropboxService dbx = new DropboxService(
-                            tokens.getDropboxAppKey(),
-                            tokens.getDropboxAppSecret(),
-                            tokens.getDropboxRefreshToken(),
-                            "ResourcepackPlus/1.0"
-                    );
-                    Messaging.sendMini(sender, "<green>[RPP] Dropbox login OK. Upload path: <yellow>" + path);
+        // Skip everything if the branch still points at the commit we last built
+        String headSha;
+        try (UpdateStage ignored = job.stage("resolve")) {
+            headSha = gh.getBranchHeadSha(repoSlug, branch);
+        }
+        String source = repoSlug + "@" + branch;
+        if (!forceBuild && packStore.hasUrlAndSha1(packName)
+                && headSha.equals(packStore.getCommit(packName))
+                && source.equalsIgnoreCase(packStore.getSource(packName))) {
+            job.report("<green>[RPP] Already up to date with commit <yellow>" + headSha.substring(0, 7)
+                    + "<green>. Keeping the current pack. <gray>(add 'force' to rebuild)");
+            return;
+        }
+        job.report("<gray>[RPP] Building commit <yellow>" + headSha.substring(0, 7));
+
+        job.report("<gray>[RPP] Checking pack hosts: <yellow>" + String.join(", ", targets));
+        List<PackHost> hosts = createHosts(targets, packName);
+        Map<PackHost, Exception> unhealthy;
+        try (UpdateStage stage = job.stage("hosts")) {
+            unhealthy = new PackPublisher(hosts).checkHealth();
+            stage.entries(hosts.size());
+        }
+        for (Map.Entry<PackHost, Exception> e : unhealthy.entrySet()) {
+            if (e.getKey() == hosts.getFirst()) {
+                job.fail("<red>[RPP] Primary host " + e.getKey().getName() + " is unavailable: " + e.getValue().getMessage());
+                return;
+            }
+            job.report("<yellow>[RPP] Skipping " + e.getKey().getName() + ": " + e.getValue().getMessage());
+        }
+        PackPublisher publisher = new PackPublisher(hosts.stream().filter(h -> !unhealthy.containsKey(h)).toList());
+        job.report("<green>[RPP] Pack hosts OK.");
+        job.checkCancelled();
+
+        // Step 2: Download resourcepack archive from GitHub
+        boolean incremental = plugin.getConfig().getBoolean("build.incremental", false);
+        job.report(incremental ? "<gray>[RPP] Updating the local copy of the repository…" : "<gray>[RPP] Downloading repository ZIP from GitHub…");
+
+        // Every job gets its own workspace, removed by the queue when the job ends
+        File workDir = job.getWorkspace();
+        File targetDir = new File(workDir, "resourcepack");
+        if (!targetDir.exists() && !targetDir.mkdirs()) {
+            job.fail("<red>[RPP] Failed to create target directory: " + targetDir.getAbsolutePath());
+            return;
+        }
 
-                    // Step 2: Download resourcepack archive from GitHub
-                    Messaging.sendMini(sender, "<gray>[RPP] Downloading repository ZIP from GitHub…");
+        File tempZipFile = new File(workDir, "temp-download.zip");
+        File finalZipFile = new File(workDir, "Resourcepack.zip");
+
+        PackBuildOptions buildOptions = PackBuildOptions.fromConfig(plugin.getConfig().getConfigurationSection("build"));
+        // Every digest the hosts need is computed while the pack is written, so it is never read back:
+        // Dropbox's content hash to skip uploading unchanged bytes, SHA-256 to sign S3 uploads
+        List<MultiDigest.Kind> digestKinds = new ArrayList<>();
+        if (targets.contains("dropbox")) digestKinds.add(MultiDigest.Kind.DROPBOX);
+        if (targets.contains("s3")) digestKinds.add(MultiDigest.Kind.SHA256);
+        MultiDigest digests = MultiDigest.of(digestKinds.toArray(MultiDigest.Kind[]::new));
+        String sha1;
+        SourceTreeCache sourceCache = null;
+        SourceTreeCache.Tree sourceTree = null;
+        if (incremental) {
+            // Fetch only the files changed since the last build and pack from the local copy
+            sourceCache = new SourceTreeCache(new File(plugin.getDataFolder(), "source" + File.separator + packName));
+            SourceSync sync = new SourceSync(gh, repoSlug, sourceCache);
+            try {
+                try (UpdateStage stage = job.stage("sync")) {
+                    sourceTree = sync.sync(source, headSha, job);
+                    stage.entries(sourceTree.files().size());
+                }
+                try (UpdateStage stage = job.stage("package")) {
+                    sha1 = ZipUtil.packFiles(sync.packFiles(sourceTree), finalZipFile, buildOptions, digests);
+                    stage.bytes(finalZipFile.length()).entries(ZipUtil.countEntries(finalZipFile));
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(finalZipFile.toPath());
+                job.fail("<red>[RPP] Failed to build ZIP: " + e.getMessage());
+                e.printStackTrace();
+                return;
+            }
+            job.report("<green>[RPP] Built ZIP: <yellow>" + finalZipFile.getName()
+                    + " <gray>(" + finalZipFile.length() + " bytes)");
+            job.report("<green>[RPP] SHA1: <yellow>" + sha1);
+        } else if (plugin.getConfig().getBoolean("build.streaming", false) && !buildOptions.rawCopy()) {
+            // Raw copy needs the zipball's central directory, so it always goes through the temp file
+            // Download, repackage and hash in one pass straight from the GitHub stream
+            job.report("<gray>[RPP] Streaming ZIP from GitHub and repackaging…");
+            try (UpdateStage stage = job.stage("stream");
+                 InputStream in = gh.getAuthenticatedStream(gh.getZipballUrl(repoSlug, headSha))) {
+                sha1 = ZipUtil.repackageZipballStream(in, finalZipFile, buildOptions, digests);
+                stage.bytes(finalZipFile.length()).entries(ZipUtil.countEntries(finalZipFile));
+            } catch (IOException e) {
+                Files.deleteIfExists(finalZipFile.toPath());
+                job.fail("<red>[RPP] Failed to build ZIP: " + e.getMessage());
+                e.printStackTrace();
+                return;
+            }
+            job.report("<green>[RPP] Repackaged ZIP: <yellow>" + finalZipFile.getName()
+                    + " <gray>(" + finalZipFile.length() + " bytes)");
+            job.report("<green>[RPP] SHA1: <yellow>" + sha1);
+        } else {
+            // Download GitHub zipball (with nested folder structure)
+            try (UpdateStage stage = job.stage("download");
+                 InputStream in = gh.getAuthenticatedStream(gh.getZipballUrl(repoSlug, headSha));
+                 FileOutputStream out = new FileOutputStream(tempZipFile)) {
+                stage.bytes(in.transferTo(out));
+            }
 
-                    // Prepare workspace in plugin folder
-                    File workDir = new File(plugin.getDataFolder(), "work");
-                    if (!workDir.exists() && !workDir.mkdirs()) {
-                        Messaging.sendMini(sender, "<red>[RPP] Failed to create working directory: " + workDir.getAbsolutePath());
-                        return;
-                    }
+            job.report("<green>[RPP] Downloaded ZIP: <yellow>" +
+                    tempZipFile.getName() + " <gray>(" + tempZipFile.length() + " bytes)");
 
-                    String timestamp = new SimpleDateFormat("dd-MM-yyyy-HH-mm-ss").format(new Date());
-                    File targetDir = new File(workDir, "resourcepack-" + timestamp);
-                    if (!targetDir.exists() && !targetDir.mkdirs()) {
-                        Messaging.sendMini(sender, "<red>[RPP] Failed to create target directory: " + targetDir.getAbsolutePath());
-                        return;
-                    }
+            //Repackage ZIP to remove nested folder structure
+            job.report("<gray>[RPP] Repackaging ZIP to correct structure…");
 
-                    String tempZipName = "temp-download-" + timestamp + ".zip";
-                    String finalZipName = "Resourcepack-" + timestamp + ".zip";
-                    File tempZipFile = new File(workDir, tempZipName);
-                    File finalZipFile = new File(workDir, finalZipName);
+            try (UpdateStage stage = job.stage("repackage")) {
+                ZipUtil.repackageZipball(tempZipFile, finalZipFile, buildOptions, digests);
+                stage.bytes(finalZipFile.length()).entries(ZipUtil.countEntries(finalZipFile));
+                job.report("<green>[RPP] Repackaged ZIP: <yellow>" + finalZipFile.getName());
 
-                    // Download GitHub zipball (with nested folder structure)
-                    try (InputStream in = gh.getAuthenticatedStream(gh.getZipballUrl(repoSlug, branch));
-                         FileOutputStream out = new FileOutputStream(tempZipFile)) {
-                        in.transferTo(out);
-                    }
+                // Clean up temporary download
+                tempZipFile.delete();
+            } catch (IOException e) {
+                job.fail("<red>[RPP] Failed to repackage ZIP: " + e.getMessage());
+                e.printStackTrace();
+                return;
+            }
 
-                    Messaging.sendMini(sender, "<green>[RPP] Downloaded ZIP: <yellow>" +
-                            tempZipFile.getName() + " <gray>(" + tempZipFile.length() + " bytes)");
+            //Extract the properly structured ZIP
+            job.report("<gray>[RPP] Extracting ZIP…");
 
-                    //Repackage ZIP to remove nested folder structure
-                    Messaging.sendMini(sender, "<gray>[RPP] Repackaging ZIP to correct structure…");
+            try (UpdateStage ignored = job.stage("extract")) {
+                ZipUtil.unzipToDirectory(finalZipFile, targetDir);
+                job.report("<green>[RPP] Resourcepack extracted to: <yellow>" + targetDir.getAbsolutePath());
+            } catch (IOException e) {
+                job.report("<red>[RPP] Failed to unzip resourcepack: " + e.getMessage());
+                e.printStackTrace();
+            }
 
-                    try {
-                        ZipUtil.repackageZipball(tempZipFile, finalZipFile);
-                        Messaging.sendMini(sender, "<green>[RPP] Repackaged ZIP: <yellow>" + finalZipFile.getName());
+            // Step 3: The SHA-1 was computed while repackaging
+            sha1 = digests.hex(MultiDigest.Kind.SHA1);
+            job.report("<green>[RPP] SHA1: <yellow>" + sha1);
+        }
 
-                        // Clean up temporary download
-                        tempZipFile.delete();
-                    } catch (IOException e) {
-                        Messaging.sendMini(sender, "<red>[RPP] Failed to repackage ZIP: " + e.getMessage());
-                        e.printStackTrace();
-                        return;
-                    }
+        if (buildOptions.optimizer() != null) {
+            job.report("<green>[RPP] Optimizer " + buildOptions.optimizer().summary());
+        }
 
-                    //Extract the properly structured ZIP
-                    Messaging.sendMini(sender, "<gray>[RPP] Extracting ZIP…");
+        // Name reproducible packs after their content so the same bytes keep the same file name.
+        // The pack waits for publishing outside the job workspace, next to the progress of an interrupted
+        // upload of the same file, so that upload resumes; packs left over from other builds are dropped.
+        String packFileName = buildOptions.reproducible() ? "Resourcepack-" + sha1 + ".zip" : finalZipFile.getName();
+        File uploadDir = job.getUploadDir();
+        if (!uploadDir.isDirectory() && !uploadDir.mkdirs()) {
+            job.fail("<red>[RPP] Failed to create upload directory: " + uploadDir.getAbsolutePath());
+            return;
+        }
+        File[] leftovers = uploadDir.listFiles(f -> !f.getName().equals(packFileName)
+                && !f.getName().equals(packFileName + ".upload"));
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                FileUtils.deleteQuietly(leftover);
+            }
+        }
+        File uploadZipFile = new File(uploadDir, packFileName);
+        Files.move(finalZipFile.toPath(), uploadZipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        finalZipFile = uploadZipFile;
 
-                    try {
-                        ZipUtil.unzipToDirectory(finalZipFile, targetDir);
-                        Messaging.sendMini(sender, "<green>[RPP] Resourcepack extracted to: <yellow>" + targetDir.getAbsolutePath());
-                    } catch (IOException e) {
-                        Messaging.sendMini(sender, "<red>[RPP] Failed to unzip resourcepack: " + e.getMessage());
-                        e.printStackTrace();
-                    }
+        File packProps = new File(plugin.getDataFolder(), "pack.properties");
+        if (!packProps.exists()) {
+            job.fail("<red>[RPP] pack.properties not found at: " + packProps.getAbsolutePath());
+            return;
+        }
 
+        job.checkCancelled();
+
+        // Step 4: Publish to every host at once. The new pack is uploaded and linked everywhere
+        // before old packs are removed, so the live URL never points at a deleted file.
+        job.report("<gray>[RPP] Publishing to " + publisher.getHosts().stream()
+                .map(PackHost::getName).collect(Collectors.joining(", ")) + "…");
+        PackHost.PackFile packFile = new PackHost.PackFile(finalZipFile, sha1,
+                digests.hex(MultiDigest.Kind.DROPBOX), digests.hex(MultiDigest.Kind.SHA256));
+        List<PackPublisher.Result> results;
+        try (UpdateStage stage = job.stage("publish")) {
+            results = publisher.upload(packFile, host -> uploadProgress(job, host));
+            stage.bytes(finalZipFile.length() * results.stream().filter(PackPublisher.Result::uploaded).count())
+                    .entries(results.size());
+        }
+        for (PackPublisher.Result r : results) {
+            String name = r.host().getName();
+            if (!r.ok()) {
+                job.report("<red>[RPP] Failed to publish to " + name + ": " + r.error().getMessage());
+                r.error().printStackTrace();
+            } else if (r.uploaded()) {
+                job.report("<green>[RPP] Published to " + name + ": <yellow>" + r.location());
+            } else {
+                job.report("<green>[RPP] " + name + " already has identical content at <yellow>" + r.location()
+                        + "<green>. Upload skipped.");
+            }
+        }
+        PackPublisher.Result primary = results.getFirst();
+        if (!primary.ok()) {
+            job.fail("<red>[RPP] Update failed: the pack could not be published to " + primary.host().getName() + ".");
+            return;
+        }
 
-                    // Step 3: Calculate SHA1 of the final zip
-                    Messaging.sendMini(sender, "<gray>[RPP] Calculating SHA1…");
-                    String sha1 = HashUtil.sha1OfFile(finalZipFile);
-                    Messaging.sendMini(sender, "<green>[RPP] SHA1: <yellow>" + sha1);
+        // Last point a cancel takes effect; after this the new pack is live
+        job.checkCancelled();
+
+        // Step 5: Switch pack.properties to the primary host's link, then remove old packs everywhere
+        String link = primary.url();
+        job.report("<green>[RPP] Pack URL: <yellow>" + link);
+        PackSnapshot previous = plugin.getPack(packName);
+        packStore.setPack(packName, link, sha1, source, headSha);
+        plugin.setResourcePack(packName, link, sha1);
+        job.report("<green>[RPP] pack.properties updated. <gray>Removing old versions of " + packName + "…");
+        try (UpdateStage ignored = job.stage("cleanup")) {
+            publisher.deleteAllExcept(results);
+            if (sourceTree != null) {
+                // The local copy is only moved to this commit once its pack is live; a failed build
+                // leaves the last published tree in place, and the next build compares against that
+                sourceCache.save(sourceTree);
+                sourceCache.prune(sourceTree.files().values());
+            }
+        }
+        // Keep the pack while a mirror still misses it, so a forced update can resume that upload
+        if (results.stream().allMatch(PackPublisher.Result::ok)) {
+            FileUtils.deleteQuietly(uploadDir);
+        }
 
-                    // Step 4: Upload to Dropbox
-                    Messaging.sendMini(sender, "<gray>[RPP] Cleaning Dropbox folder before upload…");
-                    dbx.clearFolder(path); // This will delete old resource packs
+        // Step 6: Push the new pack to everyone online instead of restarting
+        PackSnapshot current = plugin.getPack(packName);
+        PackRollout rollout = plugin.getRollout();
+        if (rollout == null) {
+            job.report("<green>[RPP] Process finished! Players get the new pack when they re-join.");
+        } else if (previous != null && previous.sha1().equalsIgnoreCase(sha1)) {
+            job.report("<green>[RPP] Process finished! Players already have this pack.");
+        } else {
+            Bukkit.getScheduler().runTask(plugin, () -> rollout.start(current, job.getRequester()));
+        }
+    }
 
-                    Messaging.sendMini(sender, "<gray>[RPP] Uploading to Dropbox…");
-                    String dropboxPath = path.endsWith("/") ? path + finalZipFile.getName() : path + "/" + finalZipFile.getName();
-                    dbx.uploadFile(finalZipFile, dropboxPath);
-                    Messaging.sendMini(sender, "<green>[RPP] Uploaded to Dropbox at <yellow>" + dropboxPath);
+    /**
+     * Hosts listed in config.yml, in order. Without a list, the embedded server is used when it runs, Dropbox otherwise.
+     */
+    private List<String> hostTargets() {
+        List<String> targets = new ArrayList<>();
+        for (String t : plugin.getConfig().getStringList("hosts")) {
+            String name = t.trim().toLowerCase(Locale.ROOT);
+            if (!name.isEmpty() && !targets.contains(name)) targets.add(name);
+        }
+        if (targets.isEmpty()) {
+            targets.add(plugin.getHttpServer() != null ? "local" : "dropbox");
+        }
+        return targets;
+    }
 
-                    // Step 5: Create/obtain share link and force direct download (?dl=1)
-                    Messaging.sendMini(sender, "<gray>[RPP] Creating Dropbox share link…");
-                    String share = dbx.createOrGetSharedLink(dropboxPath);
-                    String direct;
-                    if (share.contains("dl=0")) {
-                        direct = share.replaceAll("([?&])dl=0", "$1dl=1");
-                    } else {
-                        direct = share.contains("?") ? share + "&dl=1" : share + "?dl=1";
+    /**
+     * Returns what is missing to publish to the given hosts, or null when everything is set up.
+     */
+    private String validateHosts(List<String> targets) {
+        for (String target : targets) {
+            switch (target) {
+                case "dropbox" -> {
+                    if (!tokens.hasDropboxCredentials()) {
+                        return "Missing Dropbox token. Use /rpp dropbox <appkey> <appsecret> first.";
                     }
-                    Messaging.sendMini(sender, "<green>[RPP] Share link: <yellow>" + direct);
-
-                    // Step 6: Update server.properties (UTF-8)
-                    Messaging.sendMini(sender, "<gray>[RPP] Updating pack.properties…");
-                    File packRoot = plugin.getDataFolder();
-                    File packProps = new File(packRoot, "pack.properties");
-                    if (!packProps.exists()) {
-                        Messaging.sendMini(sender, "<red>[RPP] pack.properties not found at: " + packProps.getAbsolutePath());
-                        return;
+                    String path = plugin.getConfig().getString("dropboxPath");
+                    if (path == null || path.isBlank()) {
+                        return "Missing Dropbox path. Use /rpp dropbox-path <path>.";
                     }
-
-                    packStore.setUrlAndSha1(direct, sha1);
-                    plugin.setResourcePackUrl(direct);
-                    plugin.setResourcePackSha1(sha1);
-
-                    Messaging.sendMini(sender, "<green>[RPP] pack.properties updated.");
-
-                    // Step 7: Delete Work folder
-                    try {
-                        Files.deleteIfExists(finalZipFile.toPath());
-                        FileUtils.deleteDirectory(targetDir); // Apache Commons IO
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                }
+                case "local" -> {
+                    if (localUrlPrefix() == null) {
+                        return "The local host needs localHost.publicUrl or a running httpServer.";
                     }
-
-                    if(!restart) {
-                        Messaging.sendMini(sender, "<green>[RPP] Process finished! Re-join or restart the server to view changes.");
-                        return;
+                }
+                case "s3" -> {
+                    if (!tokens.hasS3Credentials()) {
+                        return "Missing S3 keys. Use /rpp s3 <accessKey> <secretKey> first.";
                     }
+                    if (plugin.getConfig().getString("s3.endpoint", "").isBlank()
+                            || plugin.getConfig().getString("s3.bucket", "").isBlank()) {
+                        return "Set s3.endpoint and s3.bucket in config.yml.";
+                    }
+                }
+                default -> {
+                    return "Unknown host '" + target + "' in config.yml. Use dropbox, local or s3.";
+                }
+            }
+        }
+        return null;
+    }
 
-                    // Step 8: Announce restart and restart after delay
-                    boolean announce = plugin.getConfig().getBoolean("announceRestart", true);
-                    int delaySec = Math.max(1, plugin.getConfig().getInt("restartDelaySeconds", 10));
-
-                    if (announce) {
-                        Bukkit.getScheduler().runTask(plugin, () -> Bukkit.broadcast(MiniMessage.miniMessage().deserialize("<gold>[RPP] Server will restart in " + delaySec + " seconds to apply the new resource pack…")));
+    /**
+     * Hosts for one pack. Named packs are kept in their own sub-folder or key prefix on every host,
+     * so removing old versions of one pack never touches another.
+     */
+    private List<PackHost> createHosts(List<String> targets, String pack) {
+        String folder = PackSnapshot.folderOf(pack);
+        List<PackHost> hosts = new ArrayList<>();
+        for (String target : targets) {
+            switch (target) {
+                case "dropbox" -> {
+                    DropboxService dbx = new DropboxService(
+                            tokens.getDropboxAppKey(),
+                            tokens.getDropboxAppSecret(),
+                            tokens.getDropboxRefreshToken(),
+                            "ResourcepackPlus/1.0"
+                    );
+                    DropboxService.UploadSettings uploadSettings = new DropboxService.UploadSettings(
+                            Math.max(4, plugin.getConfig().getInt("dropboxUpload.chunkSizeMb", 8)) * 1024L * 1024L,
+                            Math.max(1, plugin.getConfig().getInt("dropboxUpload.parallelChunks", 4)),
+                            Math.max(1, plugin.getConfig().getInt("dropboxUpload.retries", 3))
+                    );
+                    String path = plugin.getConfig().getString("dropboxPath");
+                    hosts.add(new DropboxPackHost(dbx, folder.isEmpty() ? path : withSlash(path) + pack, uploadSettings));
+                }
+                case "local" -> {
+                    String dir = plugin.getConfig().getString("localHost.directory", "");
+                    File directory;
+                    if (!dir.isBlank()) {
+                        directory = new File(dir);
+                    } else if (plugin.getHttpServer() != null) {
+                        directory = plugin.getHttpServer().getPackDir();
+                    } else {
+                        directory = new File(plugin.getDataFolder(), "packs");
                     }
+                    hosts.add(new LocalPackHost(new File(directory, folder), withSlash(localUrlPrefix()) + folder));
+                }
+                case "s3" -> hosts.add(new S3PackHost(new S3PackHost.Settings(
+                        plugin.getConfig().getString("s3.endpoint"),
+                        plugin.getConfig().getString("s3.region", "us-east-1"),
+                        plugin.getConfig().getString("s3.bucket"),
+                        withSlash(plugin.getConfig().getString("s3.prefix", "resourcepacks/")) + folder,
+                        tokens.getS3AccessKey(),
+                        tokens.getS3SecretKey(),
+                        plugin.getConfig().getBoolean("s3.pathStyle", true),
+                        plugin.getConfig().getBoolean("s3.publicRead", true),
+                        plugin.getConfig().getString("s3.publicUrl", "")
+                )));
+            }
+        }
+        return hosts;
+    }
 
-                    Messaging.sendMini(sender, "<green>[RPP] All steps complete. Scheduling restart in " + delaySec + "s…");
+    private static String withSlash(String path) {
+        return path.isEmpty() || path.endsWith("/") ? path : path + "/";
+    }
 
-                    Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                        for (Player pl : Bukkit.getOnlinePlayers()) {
-                            Messaging.sendMini(pl, "<gold>[RPP] Restarting now to apply the new resource pack…");
-                        }
-                        Bukkit.shutdown();
-                    }, delaySec * 20L);
+    /**
+     * Public URL of the local pack folder: localHost.publicUrl, or the embedded server's when it runs.
+     */
+    private String localUrlPrefix() {
+        String url = plugin.getConfig().getString("localHost.publicUrl", "");
+        if (!url.isBlank()) return url;
+        PackHttpServer server = plugin.getHttpServer();
+        return server != null ? server.getPackUrlPrefix() : null;
+    }
 
-                } catch (Exception ex) {
-                    Messaging.sendMini(sender, "<red>[RPP] Update failed: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
+    /**
+     * Upload progress for one host, reported roughly every 10%.
+     */
+    private BiConsumer<Long, Long> uploadProgress(UpdateJob job, PackHost host) {
+        int[] lastReported = {0};
+        return (done, total) -> {
+            int percent = (int) (done * 100 / Math.max(1, total));
+            synchronized (lastReported) {
+                if (percent < 100 && percent - lastReported[0] < 10) return;
+                if (percent == lastReported[0]) return;
+                lastReported[0] = percent;
             }
-        }.runTaskAsynchronously(plugin);
+            job.report("<gray>[RPP] " + host.getName() + ": uploaded " + percent + "% <gray>(" + done + "/" + total + " bytes)");
+        };
     }
 
     @Override
@@ -446,7 +889,7 @@ public class RppCommand implements CommandExecutor, TabCompleter, Listener {
         if (!sender.hasPermission("resourcepackplus.use")) return Collections.emptyList();
 
         if (args.length == 1) {
-            return Arrays.asList("github", "dropbox", "dropbox-path", "update");
+            return Arrays.asList("github", "dropbox", "dropbox-path", "s3", "update", "stats", "jobs");
         }
 
         if (args.length == 2) {
@@ -460,6 +903,12 @@ public class RppCommand implements CommandExecutor, TabCompleter, Listener {
                 case "dropbox-path" -> {
                     return List.of("Please enter Dropbox Path");
                 }
+                case "s3" -> {
+                    return List.of("Please enter S3 Access Key");
+                }
+                case "jobs" -> {
+                    return List.of("cancel");
+                }
                 case "update" -> {
                     // Pull from config: githubRepositories list
                     List<String> repos = plugin.getConfig().getStringList("githubRepositories");
@@ -473,6 +922,15 @@ public class RppCommand implements CommandExecutor, TabCompleter, Listener {
                 case "dropbox" -> {
                     return List.of("Please enter Dropbox App Secret");
                 }
+                case "s3" -> {
+                    return List.of("Please enter S3 Secret Key");
+                }
+                case "jobs" -> {
+                    return plugin.getUpdateJobs().getJobs().stream()
+                            .filter(j -> j.getState() == UpdateJob.State.QUEUED || j.getState() == UpdateJob.State.RUNNING)
+                            .map(j -> String.valueOf(j.getId()))
+                            .toList();
+                }
                 case "update" -> {
                     // Pull from config: branches list
                     List<String> branches = plugin.getConfig().getStringList("branches");
@@ -481,10 +939,13 @@ public class RppCommand implements CommandExecutor, TabCompleter, Listener {
             }
         }
 
-        if(args.length == 4) {
+        if(args.length >= 4) {
             switch (args[0].toLowerCase(Locale.ROOT)) {
                 case "update" -> {
-                    return List.of("restart");
+                    List<String> options = new ArrayList<>(knownPackNames());
+                    options.add("pack:");
+                    options.add("force");
+                    return options;
                 }
             }
         }
@@ -1,18 +1,21 @@
 package org.jortvanschijndel.resourcepackplus.listeners;
 
-import net.kyori.adventure.resource.ResourcePackInfo;
-import net.kyori.adventure.resource.ResourcePackRequest;
-import net.kyori.adventure.text.Component;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.jortvanschijndel.resourcepackplus.ResourcepackPlus;
-import java.net.URI;
+import org.jortvanschijndel.resourcepackplus.service.PackRollout;
+import org.jortvanschijndel.resourcepackplus.service.PackSendPacer;
+
+import java.util.function.Consumer;
 
 public class JoinListener implements Listener {
 
     private final ResourcepackPlus plugin;
+    private final Consumer<Player> sendPacks = this::sendPacks;
 
     public JoinListener(ResourcepackPlus plugin) {
         this.plugin = plugin;
@@ -21,25 +24,41 @@ public class JoinListener implements Listener {
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        if (plugin.getPacks().isEmpty()) return;
 
-        String resourcePackUrl = plugin.getResourcePackUrl();
-        String resourcePackSha1 = plugin.getResourcePackSha1();
-
-        if(resourcePackUrl == null || resourcePackSha1 == null) return;
+        PackSendPacer pacer = plugin.getSendPacer();
+        if (pacer != null) {
+            // Sent when the pacer has room; the packs are picked at that point, so newer ones win
+            pacer.enqueue(player, sendPacks);
+        } else {
+            sendPacks(player);
+        }
+    }
 
-        final ResourcePackInfo packInfo = ResourcePackInfo.resourcePackInfo()
-                .uri(URI.create(resourcePackUrl))
-                .hash(resourcePackSha1)
-                .build();
+    @EventHandler
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        // Pack rules can depend on the world; only packs that change are sent or removed
+        if (plugin.getPacks().isEmpty()) return;
+        sendPacks(event.getPlayer());
+    }
 
-        final ResourcePackRequest request = ResourcePackRequest.resourcePackRequest()
-                .packs(packInfo)
-                .prompt(Component.text("Please download the resource pack!"))
-                .required(true)
-                .build();
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getStatusTracker().onQuit(event.getPlayer().getUniqueId());
+        plugin.getPackSelector().onQuit(event.getPlayer().getUniqueId());
+        PackSendPacer pacer = plugin.getSendPacer();
+        if (pacer != null) {
+            pacer.remove(event.getPlayer().getUniqueId());
+        }
+        PackRollout rollout = plugin.getRollout();
+        if (rollout != null) {
+            rollout.onQuit(event.getPlayer().getUniqueId());
+        }
+    }
 
-        // Send the resource pack request to the target audience
-        player.sendResourcePacks(request);
+    private void sendPacks(Player player) {
+        // The selector works out which packs this player needs and sends only those, in one request
+        plugin.getPackSelector().apply(player);
     }
 
 }
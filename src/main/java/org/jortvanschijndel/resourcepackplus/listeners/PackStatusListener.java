@@ -0,0 +1,29 @@
+package org.jortvanschijndel.resourcepackplus.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerResourcePackStatusEvent;
+import org.jortvanschijndel.resourcepackplus.ResourcepackPlus;
+import org.jortvanschijndel.resourcepackplus.service.PackRollout;
+
+/**
+ * Forwards players' resource pack status updates to the parts of the plugin that follow them.
+ */
+public class PackStatusListener implements Listener {
+
+    private final ResourcepackPlus plugin;
+
+    public PackStatusListener(ResourcepackPlus plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onPackStatus(PlayerResourcePackStatusEvent event) {
+        plugin.getStatusTracker().onStatus(event.getPlayer(), event.getID(), event.getStatus());
+        plugin.getPackSelector().onStatus(event.getPlayer(), event.getID(), event.getStatus());
+        PackRollout rollout = plugin.getRollout();
+        if (rollout != null) {
+            rollout.onStatus(event.getPlayer(), event.getID(), event.getStatus());
+        }
+    }
+}
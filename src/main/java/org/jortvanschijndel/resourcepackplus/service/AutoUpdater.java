@@ -0,0 +1,224 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.scheduler.BukkitTask;
+import org.jortvanschijndel.resourcepackplus.ResourcepackPlus;
+import org.jortvanschijndel.resourcepackplus.storage.PackStore;
+import org.jortvanschijndel.resourcepackplus.util.HashUtil;
+import org.jortvanschijndel.resourcepackplus.util.PackSnapshot;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Starts {@code /rpp update} jobs on its own when a watched branch gets new commits. Pushes are picked up
+ * by polling GitHub with conditional requests, by GitHub calling the push webhook on the embedded
+ * {@link PackHttpServer}, or both. Webhook calls must be signed with the shared secret (GitHub's
+ * {@code X-Hub-Signature-256}); anything else is rejected. Builds go through the {@link UpdateJobQueue},
+ * so a push seen by both the webhook and polling is only built once.
+ */
+public class AutoUpdater {
+
+    public static final String WEBHOOK_PATH = "/webhook/github";
+
+    /**
+     * A branch that is built into {@code pack} whenever it changes.
+     */
+    public record Watch(String url, String repoSlug, String branch, String pack) {}
+
+    private final ResourcepackPlus plugin;
+    private final List<Watch> watches;
+    private final int pollSeconds;
+    private final byte[] secret;
+    private final Logger log;
+
+    private final Map<Watch, String> etags = new ConcurrentHashMap<>();
+    private BukkitTask pollTask;
+
+    /**
+     * @param pollSeconds seconds between polls; 0 turns polling off
+     * @param secret      webhook secret; null or empty turns the webhook off
+     */
+    public AutoUpdater(ResourcepackPlus plugin, List<Watch> watches, int pollSeconds, String secret) {
+        this.plugin = plugin;
+        this.watches = List.copyOf(watches);
+        this.pollSeconds = pollSeconds;
+        this.secret = secret == null || secret.isEmpty() ? null : secret.getBytes(StandardCharsets.UTF_8);
+        this.log = plugin.getLogger();
+    }
+
+    public static AutoUpdater fromConfig(ResourcepackPlus plugin, ConfigurationSection section) {
+        List<Watch> watches = new ArrayList<>();
+        for (Map<?, ?> entry : section.getMapList("watch")) {
+            String url = entry.get("repository") != null ? String.valueOf(entry.get("repository")) : null;
+            String branch = entry.get("branch") != null ? String.valueOf(entry.get("branch")) : null;
+            String pack = entry.get("pack") != null ? String.valueOf(entry.get("pack")).toLowerCase(Locale.ROOT) : PackSnapshot.DEFAULT;
+            String slug = GitHubService.parseOwnerRepoFromUrl(url);
+            if (slug == null || branch == null || branch.isBlank() || !PackSnapshot.isValidName(pack)) {
+                plugin.getLogger().warning("Ignoring autoUpdate.watch entry " + entry + ": needs a GitHub repository, a branch and a valid pack name.");
+                continue;
+            }
+            watches.add(new Watch(url, slug, branch, pack));
+        }
+        int pollSeconds = section.getBoolean("polling.enabled", true) ? Math.max(15, section.getInt("polling.intervalSeconds", 60)) : 0;
+        String secret = null;
+        if (section.getBoolean("webhook.enabled", false)) {
+            secret = section.getString("webhook.secret", "");
+            if (secret.isEmpty()) {
+                plugin.getLogger().warning("autoUpdate.webhook is enabled but webhook.secret is empty; the webhook is off. Set the same secret as in the GitHub webhook settings.");
+            }
+        }
+        return new AutoUpdater(plugin, watches, pollSeconds, secret);
+    }
+
+    public void start() {
+        if (watches.isEmpty()) {
+            log.warning("autoUpdate is enabled but autoUpdate.watch lists no branches.");
+            return;
+        }
+        if (pollSeconds > 0) {
+            long ticks = pollSeconds * 20L;
+            pollTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::poll, 200L, ticks);
+            log.info("Checking " + watches.size() + " branch(es) for new commits every " + pollSeconds + "s.");
+        }
+        if (secret != null) {
+            PackHttpServer server = plugin.getHttpServer();
+            if (server == null) {
+                log.warning("autoUpdate.webhook needs httpServer to be enabled; the webhook is off.");
+            } else {
+                server.addPostRoute(WEBHOOK_PATH, this::onWebhook);
+                log.info("Listening for GitHub push webhooks on " + server.urlOf(WEBHOOK_PATH));
+            }
+        }
+    }
+
+    public void stop() {
+        if (pollTask != null) {
+            pollTask.cancel();
+            pollTask = null;
+        }
+    }
+
+    private void poll() {
+        if (!plugin.getTokenStore().hasGithubToken()) return;
+        // Skip instead of queueing up timer runs behind the rate limit wait
+        if (GitHubHttp.isRateLimited()) return;
+        try {
+            GitHubService gh = new GitHubService(plugin.getTokenStore().getGithubToken(), log::info);
+            for (Watch watch : watches) {
+                try {
+                    GitHubService.HeadCheck check = gh.getBranchHeadShaIfChanged(watch.repoSlug(), watch.branch(), etags.get(watch));
+                    if (check.changed() && !isBuilt(watch, check.sha())
+                            && !trigger(watch, "new commit " + check.sha().substring(0, 7))) {
+                        // Keep the old ETag so the change is seen again on the next poll
+                        continue;
+                    }
+                    if (check.etag() != null) etags.put(watch, check.etag());
+                } catch (Exception e) {
+                    log.warning("Failed to check " + watch.repoSlug() + "@" + watch.branch() + ": " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            log.warning("Failed to check watched branches: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles a GitHub webhook delivery. Answers 401 for a missing or wrong signature, 202 when a build was
+     * started and 204 when the push does not concern a watched branch.
+     */
+    private int onWebhook(Map<String, String> headers, byte[] body) {
+        if (!verifySignature(headers.get("x-hub-signature-256"), body)) {
+            log.warning("Rejected a webhook call with a missing or invalid signature.");
+            return 401;
+        }
+        String event = headers.getOrDefault("x-github-event", "");
+        if (event.equals("ping")) return 200;
+        if (!event.equals("push")) return 204;
+
+        String json = new String(body, StandardCharsets.UTF_8);
+        // GitHub can also send the payload form-encoded
+        if (headers.getOrDefault("content-type", "").startsWith("application/x-www-form-urlencoded") && json.startsWith("payload=")) {
+            json = URLDecoder.decode(json.substring("payload=".length()), StandardCharsets.UTF_8);
+        }
+        JsonObject payload;
+        try {
+            payload = JsonParser.parseString(json).getAsJsonObject();
+        } catch (RuntimeException e) {
+            return 400;
+        }
+        if (payload.has("deleted") && payload.get("deleted").getAsBoolean()) return 204;
+
+        String ref = stringOf(payload.get("ref"));
+        JsonElement repository = payload.get("repository");
+        String repo = repository != null && repository.isJsonObject() ? stringOf(repository.getAsJsonObject().get("full_name")) : null;
+        String after = stringOf(payload.get("after"));
+        if (ref == null || repo == null) return 400;
+
+        boolean started = false;
+        for (Watch watch : watches) {
+            if (watch.repoSlug().equalsIgnoreCase(repo) && ref.equals("refs/heads/" + watch.branch())
+                    && (after == null || !isBuilt(watch, after))) {
+                if (!trigger(watch, "push" + (after != null && after.length() >= 7 ? " " + after.substring(0, 7) : ""))) {
+                    return 503;
+                }
+                started = true;
+            }
+        }
+        return started ? 202 : 204;
+    }
+
+    private boolean verifySignature(String header, byte[] body) {
+        if (header == null || !header.startsWith("sha256=")) return false;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            byte[] expected = HashUtil.toHex(mac.doFinal(body)).getBytes(StandardCharsets.US_ASCII);
+            byte[] actual = header.substring("sha256=".length()).toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the pack was last built from this exact commit of the watched branch.
+     */
+    private boolean isBuilt(Watch watch, String sha) {
+        PackStore store = plugin.getPackStore();
+        return sha.equals(store.getCommit(watch.pack()))
+                && (watch.repoSlug() + "@" + watch.branch()).equalsIgnoreCase(store.getSource(watch.pack()));
+    }
+
+    /**
+     * Queues a build of the watched branch. Returns false when the update queue is full.
+     */
+    private boolean trigger(Watch watch, String reason) {
+        log.info("Auto-updating pack '" + watch.pack() + "' from " + watch.repoSlug() + "@" + watch.branch() + " (" + reason + ")");
+        try {
+            plugin.getUpdateJobs().submit(watch.url(), watch.branch(), watch.pack(), false, Bukkit.getConsoleSender());
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warning("Update queue is full; auto-update of '" + watch.pack() + "' will be retried.");
+            return false;
+        }
+    }
+
+    private static String stringOf(JsonElement element) {
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+}
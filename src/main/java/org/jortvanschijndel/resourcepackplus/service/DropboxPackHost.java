@@ -0,0 +1,55 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Publishes packs to a Dropbox folder and hands out direct ({@code ?dl=1}) share links.
+ */
+public class DropboxPackHost implements PackHost {
+
+    private final DropboxService dropbox;
+    private final String folderPath;
+    private final DropboxService.UploadSettings settings;
+
+    public DropboxPackHost(DropboxService dropbox, String folderPath, DropboxService.UploadSettings settings) {
+        this.dropbox = dropbox;
+        this.folderPath = folderPath.startsWith("/") ? folderPath : "/" + folderPath;
+        this.settings = settings;
+    }
+
+    @Override
+    public String getName() {
+        return "dropbox";
+    }
+
+    @Override
+    public void checkHealth() throws Exception {
+        dropbox.getAccountName();
+    }
+
+    /**
+     * Skips the upload when a file with the same Dropbox content hash is already in the folder.
+     */
+    @Override
+    public Upload upload(PackFile pack, BiConsumer<Long, Long> progress) throws Exception {
+        String existing = pack.dropboxContentHash() != null
+                ? dropbox.findByContentHash(folderPath, pack.dropboxContentHash()) : null;
+        if (existing != null) {
+            return new Upload(existing, false);
+        }
+
+        String dropboxPath = folderPath.endsWith("/") ? folderPath + pack.file().getName() : folderPath + "/" + pack.file().getName();
+        dropbox.uploadFileChunked(pack.file(), dropboxPath, pack.sha1(), settings, progress);
+        return new Upload(dropboxPath, true);
+    }
+
+    @Override
+    public String getPublicUrl(String location) throws Exception {
+        return DropboxService.toDirectLink(dropbox.createOrGetSharedLink(location));
+    }
+
+    @Override
+    public void deleteAllExcept(String location) throws Exception {
+        dropbox.deleteAllExcept(folderPath, location);
+    }
+}
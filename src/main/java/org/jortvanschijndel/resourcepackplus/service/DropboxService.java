@@ -8,13 +8,60 @@ import com.dropbox.core.v2.files.*;
 import com.dropbox.core.v2.sharing.SharedLinkMetadata;
 import com.dropbox.core.v2.sharing.SharedLinkSettings;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 public class DropboxService {
 
+    /**
+     * Concurrent upload sessions require every chunk except the last to be a multiple of 4 MiB.
+     */
+    private static final long CHUNK_ALIGNMENT = 4L * 1024 * 1024;
+
+    /**
+     * Most entries a single delete_batch call accepts.
+     */
+    private static final int DELETE_BATCH_LIMIT = 1000;
+
+    /**
+     * Shared links by lower-cased Dropbox path. Links stay valid as long as the file exists,
+     * so they are kept across publishes and dropped when the file is deleted.
+     */
+    private static final Map<String, String> SHARED_LINKS = new ConcurrentHashMap<>();
+
     private final DbxClientV2 client;
 
+    /**
+     * Settings for chunked uploads.
+     *
+     * @param chunkSize      bytes per append call, rounded up to a multiple of 4 MiB
+     * @param parallelChunks number of chunks uploaded at the same time
+     * @param retries        attempts per chunk before the upload fails
+     */
+    public record UploadSettings(long chunkSize, int parallelChunks, int retries) {}
+
     public DropboxService(String appKey, String appSecret, String refreshToken, String userAgent) {
         DbxRequestConfig config = DbxRequestConfig.newBuilder(userAgent)
                 .withHttpRequestor(StandardHttpRequestor.INSTANCE)
@@ -44,37 +91,257 @@ public class DropboxService {
         }
     }
 
-    public String createOrGetSharedLink(String dropboxPath) throws Exception {
-        try {
-            SharedLinkMetadata meta = client.sharing()
-                    .createSharedLinkWithSettings(dropboxPath, SharedLinkSettings.newBuilder().build());
-            return meta.getUrl();
-        } catch (com.dropbox.core.v2.sharing.CreateSharedLinkWithSettingsErrorException e) {
-            var links = client.sharing().listSharedLinksBuilder()
-                    .withPath(dropboxPath)
-                    .withDirectOnly(true)
+    /**
+     * Uploads a file through a concurrent upload session: chunks are appended in parallel and retried
+     * individually. Progress is written next to the file ({@code <file>.upload}), so a failed upload of the
+     * same content resumes with the chunks that are still missing. Files that fit in one chunk use {@link #uploadFile}.
+     *
+     * @param sha1     SHA-1 of the file; a saved session is only resumed for the same content
+     * @param progress called with (bytes uploaded, total bytes) after every finished chunk
+     */
+    public void uploadFileChunked(File localFile, String dropboxDestPath, String sha1, UploadSettings settings,
+                                  BiConsumer<Long, Long> progress) throws Exception {
+        long size = localFile.length();
+        long chunkSize = Math.max(1, (settings.chunkSize() + CHUNK_ALIGNMENT - 1) / CHUNK_ALIGNMENT) * CHUNK_ALIGNMENT;
+        if (size <= chunkSize) {
+            uploadFile(localFile, dropboxDestPath);
+            progress.accept(size, size);
+            return;
+        }
+
+        int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+        File stateFile = new File(localFile.getPath() + ".upload");
+        Properties state = loadUploadState(stateFile, dropboxDestPath, sha1, size, chunkSize);
+        boolean resumed = state.getProperty("sessionId") != null;
+
+        if (!resumed) {
+            String sessionId = client.files().uploadSessionStartBuilder()
+                    .withSessionType(UploadSessionType.CONCURRENT)
                     .start()
-                    .getLinks();
-            if (!links.isEmpty()) {
-                return links.getFirst().getUrl();
+                    .uploadAndFinish(new ByteArrayInputStream(new byte[0]))
+                    .getSessionId();
+            state.setProperty("sessionId", sessionId);
+            saveUploadState(stateFile, state);
+        }
+        String sessionId = state.getProperty("sessionId");
+
+        Set<Integer> done = ConcurrentHashMap.newKeySet();
+        for (String idx : state.getProperty("done", "").split(",")) {
+            if (!idx.isBlank()) done.add(Integer.parseInt(idx.trim()));
+        }
+        AtomicLong uploaded = new AtomicLong();
+        for (int idx : done) {
+            uploaded.addAndGet(Math.min(chunkSize, size - idx * chunkSize));
+        }
+        if (resumed) {
+            progress.accept(uploaded.get(), size);
+        }
+
+        try {
+            // All chunks but the last run in parallel; the last one closes the session, so it goes after them
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, settings.parallelChunks()));
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < chunks - 1; i++) {
+                    if (done.contains(i)) continue;
+                    final int idx = i;
+                    futures.add(pool.submit(() -> {
+                        appendChunk(localFile, sessionId, idx * chunkSize, chunkSize, false, settings.retries());
+                        markChunkDone(stateFile, state, done, idx);
+                        progress.accept(uploaded.addAndGet(chunkSize), size);
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException e) {
+                        futures.forEach(other -> other.cancel(true));
+                        throw e.getCause() instanceof Exception ex ? ex : e;
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+
+            int last = chunks - 1;
+            if (!done.contains(last)) {
+                long offset = last * chunkSize;
+                appendChunk(localFile, sessionId, offset, size - offset, true, settings.retries());
+                markChunkDone(stateFile, state, done, last);
+                progress.accept(uploaded.addAndGet(size - offset), size);
+            }
+
+            client.files()
+                    .uploadSessionFinish(new UploadSessionCursor(sessionId, size),
+                            CommitInfo.newBuilder(dropboxDestPath).withMode(WriteMode.OVERWRITE).build())
+                    .uploadAndFinish(new ByteArrayInputStream(new byte[0]));
+        } catch (Exception e) {
+            // Keep the uploaded chunks for the next attempt unless Dropbox no longer knows the session
+            if (isSessionGone(e)) {
+                Files.deleteIfExists(stateFile.toPath());
             }
             throw e;
         }
+        Files.deleteIfExists(stateFile.toPath());
+    }
+
+    private void appendChunk(File localFile, String sessionId, long offset, long length, boolean close, int retries) throws Exception {
+        Exception last = null;
+        for (int attempt = 0; attempt < Math.max(1, retries); attempt++) {
+            if (attempt > 0) {
+                Thread.sleep(Math.min(30_000L, 1000L << (attempt - 1)));
+            }
+            try (FileChannel ch = FileChannel.open(localFile.toPath(), StandardOpenOption.READ);
+                 InputStream in = Channels.newInputStream(ch.position(offset))) {
+                client.files()
+                        .uploadSessionAppendV2Builder(new UploadSessionCursor(sessionId, offset))
+                        .withClose(close)
+                        .start()
+                        .uploadAndFinish(in, length);
+                return;
+            } catch (UploadSessionAppendErrorException e) {
+                // A lost response to an earlier attempt: the chunk is already in the session
+                if (e.errorValue.isIncorrectOffset()) return;
+                throw e;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    /**
+     * Whether Dropbox rejected the upload session itself (unknown, expired, closed or otherwise unusable),
+     * so it can never be resumed. Every append error other than an already received chunk counts.
+     */
+    private static boolean isSessionGone(Exception e) {
+        if (e instanceof UploadSessionAppendErrorException append) {
+            return !append.errorValue.isIncorrectOffset();
+        }
+        if (e instanceof UploadSessionFinishErrorException finish) {
+            return finish.errorValue.isLookupFailed();
+        }
+        return false;
+    }
+
+    private static Properties loadUploadState(File stateFile, String dest, String sha1, long size, long chunkSize) {
+        Properties state = new Properties();
+        if (stateFile.exists()) {
+            try (FileReader fr = new FileReader(stateFile)) {
+                state.load(fr);
+            } catch (IOException ignored) {
+                state.clear();
+            }
+        }
+        // Only resume an upload of the same content to the same place with the same chunking
+        if (!dest.equals(state.getProperty("path"))
+                || !sha1.equalsIgnoreCase(state.getProperty("sha1", ""))
+                || !String.valueOf(size).equals(state.getProperty("size"))
+                || !String.valueOf(chunkSize).equals(state.getProperty("chunkSize"))) {
+            state.clear();
+            state.setProperty("path", dest);
+            state.setProperty("sha1", sha1);
+            state.setProperty("size", String.valueOf(size));
+            state.setProperty("chunkSize", String.valueOf(chunkSize));
+        }
+        return state;
     }
 
-    public void clearFolder(String folderPath) throws Exception {
+    private static synchronized void markChunkDone(File stateFile, Properties state, Set<Integer> done, int idx) {
+        done.add(idx);
+        state.setProperty("done", String.join(",", done.stream().sorted().map(String::valueOf).toList()));
+        saveUploadState(stateFile, state);
+    }
+
+    private static synchronized void saveUploadState(File stateFile, Properties state) {
+        try (FileWriter fw = new FileWriter(stateFile)) {
+            state.store(fw, "ResourcepackPlus upload session");
+        } catch (IOException e) {
+            System.err.println("Failed to save upload state " + stateFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Path of a file in the folder whose Dropbox content hash equals {@code contentHash}, or {@code null}.
+     */
+    public String findByContentHash(String folderPath, String contentHash) throws Exception {
+        try {
+            ListFolderResult result = client.files().listFolder(folderPath);
+            while (true) {
+                for (Metadata md : result.getEntries()) {
+                    if (md instanceof FileMetadata file && contentHash.equalsIgnoreCase(file.getContentHash())) {
+                        return file.getPathDisplay();
+                    }
+                }
+                if (!result.getHasMore()) {
+                    return null;
+                }
+                result = client.files().listFolderContinue(result.getCursor());
+            }
+        } catch (ListFolderErrorException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a shared link for the path, reusing a cached or existing link before creating a new one.
+     */
+    public String createOrGetSharedLink(String dropboxPath) throws Exception {
+        String key = dropboxPath.toLowerCase(Locale.ROOT);
+        String cached = SHARED_LINKS.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        var links = client.sharing().listSharedLinksBuilder()
+                .withPath(dropboxPath)
+                .withDirectOnly(true)
+                .start()
+                .getLinks();
+        String url;
+        if (!links.isEmpty()) {
+            url = links.getFirst().getUrl();
+        } else {
+            SharedLinkMetadata meta = client.sharing()
+                    .createSharedLinkWithSettings(dropboxPath, SharedLinkSettings.newBuilder().build());
+            url = meta.getUrl();
+        }
+        SHARED_LINKS.put(key, url);
+        return url;
+    }
+
+    /**
+     * Forces a Dropbox share link to download the file directly (?dl=1).
+     */
+    public static String toDirectLink(String share) {
+        if (share.contains("dl=0")) {
+            return share.replaceAll("([?&])dl=0", "$1dl=1");
+        }
+        if (share.contains("dl=1")) {
+            return share;
+        }
+        return share.contains("?") ? share + "&dl=1" : share + "?dl=1";
+    }
+
+    /**
+     * Deletes every file in the folder except {@code keepPath} with batch requests of up to {@value #DELETE_BATCH_LIMIT} files.
+     * Sub-folders (used for named packs) are left alone.
+     */
+    public void deleteAllExcept(String folderPath, String keepPath) throws Exception {
         if (!folderPath.startsWith("/")) {
             folderPath = "/" + folderPath;
         }
 
+        List<DeleteArg> toDelete = new ArrayList<>();
         try {
             ListFolderResult result = client.files().listFolder(folderPath);
             while (true) {
                 for (Metadata md : result.getEntries()) {
-                    try {
-                        client.files().deleteV2(md.getPathLower());
-                    } catch (DeleteErrorException e) {
-                        System.err.println("Failed to delete " + md.getPathLower() + ": " + e.getMessage());
+                    if (md instanceof FileMetadata && !md.getPathLower().equals(keepPath.toLowerCase(Locale.ROOT))) {
+                        toDelete.add(new DeleteArg(md.getPathLower()));
                     }
                 }
                 if (!result.getHasMore()) {
@@ -85,6 +352,36 @@ public class DropboxService {
         } catch (ListFolderErrorException e) {
             // Folder might not exist, ignore
             System.out.println("Dropbox folder does not exist yet: " + folderPath);
+            return;
+        }
+        if (toDelete.isEmpty()) {
+            return;
+        }
+        toDelete.forEach(arg -> SHARED_LINKS.remove(arg.getPath()));
+
+        for (int from = 0; from < toDelete.size(); from += DELETE_BATCH_LIMIT) {
+            List<DeleteArg> batch = toDelete.subList(from, Math.min(toDelete.size(), from + DELETE_BATCH_LIMIT));
+            deleteBatch(folderPath, batch);
+        }
+    }
+
+    private void deleteBatch(String folderPath, List<DeleteArg> batch) throws Exception {
+        DeleteBatchLaunch launch = client.files().deleteBatch(batch);
+        if (!launch.isAsyncJobId()) {
+            return;
+        }
+        // Batch deletes run as a job; wait briefly so failures show up in the log
+        String jobId = launch.getAsyncJobIdValue();
+        for (int i = 0; i < 30; i++) {
+            DeleteBatchJobStatus status = client.files().deleteBatchCheck(jobId);
+            if (status.isFailed()) {
+                System.err.println("Failed to delete old packs in " + folderPath + ": " + status.getFailedValue());
+                return;
+            }
+            if (!status.isInProgress()) {
+                return;
+            }
+            Thread.sleep(1000);
         }
     }
 }
@@ -0,0 +1,402 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * HTTP engine for GitHub API calls and zipball downloads. All requests share one {@link HttpClient}, so
+ * connections are reused across calls and updates and HTTP/2 is used where GitHub offers it.
+ * <ul>
+ *     <li>Redirects are followed up to {@value #MAX_REDIRECTS} hops; the token is only sent to the original host.</li>
+ *     <li>Connection errors, 5xx and 429 answers are retried with exponential backoff.</li>
+ *     <li>When GitHub reports the rate limit as used up, every request waits until it resets.</li>
+ *     <li>Downloads that break off, or stall for {@value #IDLE_TIMEOUT_MS} ms, resume where they stopped
+ *     with a Range request.</li>
+ * </ul>
+ * Waits and resumes are announced through a status callback, so whoever started the request can follow them.
+ */
+public class GitHubHttp {
+
+    /**
+     * A fully read, non-redirect response.
+     */
+    public record Response(int status, byte[] body, HttpHeaders headers) {
+        public String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final Duration RESPONSE_TIMEOUT = Duration.ofSeconds(30);
+    private static final long IDLE_TIMEOUT_MS = 30_000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final long MAX_RATE_LIMIT_WAIT_MS = 15 * 60_000;
+    private static final long MIN_RATE_LIMIT_WAIT_MS = 1000;
+    private static final int MAX_RATE_LIMIT_WAITS = 3;
+
+    /**
+     * Epoch millis until which GitHub's rate limit is used up; shared by all tokens, as usually there is one.
+     */
+    private static volatile long rateLimitedUntil;
+
+    private final String token;
+    private final Consumer<String> status;
+
+    /**
+     * @param status told about rate limit waits and resumed downloads, as plain sentences
+     */
+    public GitHubHttp(String token, Consumer<String> status) {
+        this.token = token;
+        this.status = status;
+    }
+
+    /**
+     * Whether requests are currently held back until the rate limit resets.
+     */
+    public static boolean isRateLimited() {
+        return System.currentTimeMillis() < rateLimitedUntil;
+    }
+
+    /**
+     * Sends a GET and reads the whole body.
+     */
+    public Response get(URI uri, Map<String, String> headers) throws IOException {
+        HttpResponse<Flow.Publisher<List<ByteBuffer>>> res = open(uri, headers);
+        try (BodyStream body = BodyStream.of(res)) {
+            return new Response(res.statusCode(), body.readAllBytes(), res.headers());
+        }
+    }
+
+    /**
+     * Opens a download. The stream resumes on its own after connection errors and stalls, up to
+     * {@value #MAX_ATTEMPTS} times in a row without progress.
+     */
+    public InputStream download(URI uri) throws IOException {
+        HttpResponse<Flow.Publisher<List<ByteBuffer>>> res = open(uri, Map.of());
+        if (res.statusCode() != 200) {
+            BodyStream.discard(res);
+            throw new IOException("Failed to download zipball: HTTP " + res.statusCode());
+        }
+        return new ResumableStream(uri, res);
+    }
+
+    /**
+     * Sends a GET with retries, rate limit waits and redirects. The returned response is never a redirect,
+     * a 5xx or a rate limit answer unless attempts ran out; its body must be read or discarded.
+     */
+    private HttpResponse<Flow.Publisher<List<ByteBuffer>>> open(URI uri, Map<String, String> headers) throws IOException {
+        IOException lastError = null;
+        int rateLimitWaits = 0;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            awaitRateLimit();
+            HttpResponse<Flow.Publisher<List<ByteBuffer>>> res;
+            try {
+                res = followRedirects(uri, headers);
+            } catch (IOException e) {
+                lastError = e;
+                backoff(attempt, -1);
+                continue;
+            }
+
+            int status = res.statusCode();
+            long resetAt = rateLimitReset(res);
+            if (resetAt > 0) {
+                rateLimitedUntil = Math.max(rateLimitedUntil, resetAt);
+            }
+            if ((status == 403 || status == 429) && resetAt > 0) {
+                // Rate limit hit: wait for the reset without spending an attempt, a few times at most
+                BodyStream.discard(res);
+                if (++rateLimitWaits > MAX_RATE_LIMIT_WAITS) {
+                    throw new IOException("GitHub rate limit still used up after waiting " + MAX_RATE_LIMIT_WAITS + " times");
+                }
+                attempt--;
+                continue;
+            }
+            if ((status == 429 || status >= 500) && attempt < MAX_ATTEMPTS) {
+                BodyStream.discard(res);
+                backoff(attempt, res.headers().firstValueAsLong("retry-after").orElse(-1));
+                continue;
+            }
+            return res;
+        }
+        throw lastError != null ? lastError : new IOException("GitHub request failed after " + MAX_ATTEMPTS + " attempts");
+    }
+
+    private HttpResponse<Flow.Publisher<List<ByteBuffer>>> followRedirects(URI uri, Map<String, String> headers) throws IOException {
+        URI current = uri;
+        for (int hops = 0; ; hops++) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(current)
+                    .timeout(RESPONSE_TIMEOUT)
+                    .header("Accept", "application/vnd.github+json")
+                    .header("X-GitHub-Api-Version", "2022-11-28")
+                    .header("User-Agent", "ResourcepackPlus/1.0");
+            // Redirect targets (e.g. codeload.github.com) carry their own short-lived access in the URL
+            if (current.getHost().equalsIgnoreCase(uri.getHost())) {
+                request.header("Authorization", "Bearer " + token);
+            }
+            headers.forEach(request::setHeader);
+
+            HttpResponse<Flow.Publisher<List<ByteBuffer>>> res;
+            try {
+                res = CLIENT.send(request.GET().build(), HttpResponse.BodyHandlers.ofPublisher());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for GitHub");
+            }
+
+            int status = res.statusCode();
+            if (status != 301 && status != 302 && status != 303 && status != 307 && status != 308) {
+                return res;
+            }
+            BodyStream.discard(res);
+            if (hops >= MAX_REDIRECTS) {
+                throw new IOException("Too many redirects from " + uri);
+            }
+            String location = res.headers().firstValue("location")
+                    .orElseThrow(() -> new IOException("Redirect without Location from " + res.uri()));
+            current = current.resolve(location);
+        }
+    }
+
+    /**
+     * Epoch millis at which an exhausted rate limit resets, or 0 when requests are still left. Never less than
+     * {@value #MIN_RATE_LIMIT_WAIT_MS} ms away, so a reset time in the past (clock skew) still means a wait.
+     */
+    private static long rateLimitReset(HttpResponse<?> res) {
+        HttpHeaders h = res.headers();
+        long now = System.currentTimeMillis();
+        long resetAt;
+        if (h.firstValueAsLong("x-ratelimit-remaining").orElse(1) > 0) {
+            // Secondary rate limits only send Retry-After
+            if ((res.statusCode() != 403 && res.statusCode() != 429) || h.firstValue("retry-after").isEmpty()) {
+                return 0;
+            }
+            resetAt = now + h.firstValueAsLong("retry-after").orElse(60) * 1000;
+        } else {
+            resetAt = h.firstValueAsLong("x-ratelimit-reset").orElse(now / 1000 + 60) * 1000;
+        }
+        return Math.max(resetAt, now + MIN_RATE_LIMIT_WAIT_MS);
+    }
+
+    private void awaitRateLimit() throws IOException {
+        long wait = rateLimitedUntil - System.currentTimeMillis();
+        if (wait <= 0) return;
+        if (wait > MAX_RATE_LIMIT_WAIT_MS) {
+            throw new IOException("GitHub rate limit used up; it resets in " + (wait / 60_000) + " minutes");
+        }
+        status.accept("GitHub rate limit used up, waiting " + (wait / 1000 + 1) + "s for it to reset…");
+        sleep(wait + 1000);
+    }
+
+    private static void backoff(int attempt, long retryAfterSeconds) throws IOException {
+        long delay = retryAfterSeconds > 0 ? retryAfterSeconds * 1000 : Math.min(MAX_BACKOFF_MS, 1000L << (attempt - 1));
+        sleep(delay);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for GitHub");
+        }
+    }
+
+    /**
+     * Download body that reopens the request with {@code Range: bytes=<read so far>-} when the connection
+     * breaks. If the server ignores the range, the bytes already read are skipped instead. If the content
+     * changed in between (different ETag), the download fails rather than mixing two versions.
+     */
+    private final class ResumableStream extends InputStream {
+
+        private final URI uri;
+        private final String etag;
+        private BodyStream body;
+        private long position;
+        private int failures;
+
+        ResumableStream(URI uri, HttpResponse<Flow.Publisher<List<ByteBuffer>>> res) {
+            this.uri = uri;
+            this.etag = res.headers().firstValue("etag").orElse(null);
+            this.body = BodyStream.of(res);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                try {
+                    int n = body.read(b, off, len);
+                    if (n > 0) {
+                        position += n;
+                        failures = 0;
+                    }
+                    return n;
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    body.close();
+                    if (++failures >= MAX_ATTEMPTS) throw e;
+                    status.accept("GitHub download interrupted at " + position + " bytes (" + e.getMessage() + "), resuming…");
+                    backoff(failures, -1);
+                    resume();
+                }
+            }
+        }
+
+        private void resume() throws IOException {
+            Map<String, String> headers = etag != null
+                    ? Map.of("Range", "bytes=" + position + "-", "If-Range", etag)
+                    : Map.of("Range", "bytes=" + position + "-");
+            HttpResponse<Flow.Publisher<List<ByteBuffer>>> res = open(uri, headers);
+            int status = res.statusCode();
+            String newEtag = res.headers().firstValue("etag").orElse(null);
+            if (status == 206) {
+                body = BodyStream.of(res);
+            } else if (status == 200 && (etag == null || etag.equals(newEtag))) {
+                body = BodyStream.of(res);
+                body.skipNBytes(position);
+            } else {
+                BodyStream.discard(res);
+                throw new IOException(status == 200
+                        ? "Zipball changed while it was being downloaded"
+                        : "Failed to resume download: HTTP " + status);
+            }
+        }
+
+        @Override
+        public void close() {
+            body.close();
+        }
+    }
+
+    /**
+     * Blocking stream over an {@link HttpResponse} body publisher. One chunk is requested at a time, so memory
+     * stays small, and a read that waits longer than {@value #IDLE_TIMEOUT_MS} ms fails instead of hanging
+     * on a dead connection.
+     */
+    private static final class BodyStream extends InputStream implements Flow.Subscriber<List<ByteBuffer>> {
+
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        private volatile Flow.Subscription subscription;
+        private Iterator<ByteBuffer> chunk = List.<ByteBuffer>of().iterator();
+        private ByteBuffer buffer;
+        private boolean done;
+
+        static BodyStream of(HttpResponse<Flow.Publisher<List<ByteBuffer>>> res) {
+            BodyStream stream = new BodyStream();
+            res.body().subscribe(stream);
+            return stream;
+        }
+
+        static void discard(HttpResponse<Flow.Publisher<List<ByteBuffer>>> res) {
+            of(res).close();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            queue.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            queue.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            queue.add(END);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (buffer == null || !buffer.hasRemaining()) {
+                if (done) return -1;
+                if (chunk.hasNext()) {
+                    buffer = chunk.next();
+                    continue;
+                }
+                Object item;
+                try {
+                    item = queue.poll(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new InterruptedIOException("Interrupted while downloading");
+                }
+                if (item == null) {
+                    close();
+                    throw new SocketTimeoutException("No data received for " + IDLE_TIMEOUT_MS / 1000 + "s");
+                }
+                if (item == END) {
+                    done = true;
+                    return -1;
+                }
+                if (item instanceof Throwable t) {
+                    done = true;
+                    throw t instanceof IOException io ? io : new IOException(t);
+                }
+                chunk = ((List<ByteBuffer>) item).iterator();
+                subscription.request(1);
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+        }
+    }
+}
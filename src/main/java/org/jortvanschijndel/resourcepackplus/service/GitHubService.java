@@ -1,23 +1,60 @@
 package org.jortvanschijndel.resourcepackplus.service;
 
-import org.jetbrains.annotations.NotNull;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GitHubBuilder;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class GitHubService {
+
+    /**
+     * Result of {@link #getBranchHeadShaIfChanged}.
+     *
+     * @param sha  head commit, or {@code null} when the branch did not change since the given ETag
+     * @param etag ETag to send on the next check
+     */
+    public record HeadCheck(String sha, String etag) {
+        public boolean changed() {
+            return sha != null;
+        }
+    }
+
+    /**
+     * One file that differs between two commits, from {@link #compareCommits}.
+     *
+     * @param path         path in the repository
+     * @param sha          blob SHA of the new content, or {@code null} when the file was removed
+     * @param previousPath old path of a renamed file, otherwise {@code null}
+     */
+    public record FileChange(String path, String sha, String previousPath) {}
+
+    /**
+     * GitHub's compare API lists at most this many files; a full list may have been cut off.
+     */
+    private static final int COMPARE_FILE_LIMIT = 300;
+
     private final GitHub gh;
-    private final String token;
+    private final GitHubHttp http;
 
-    public GitHubService(String token) throws Exception {
-        this.token = token;
+    /**
+     * @param status told about rate limit waits and resumed downloads, see {@link GitHubHttp}
+     */
+    public GitHubService(String token, Consumer<String> status) throws Exception {
+        this.http = new GitHubHttp(token, status);
         this.gh = new GitHubBuilder()
                 .withOAuthToken(token)
                 .build();
@@ -27,7 +64,7 @@ public class GitHubService {
         return gh.getMyself().getLogin();
     }
 
-    public String parseOwnerRepoFromUrl(String url) {
+    public static String parseOwnerRepoFromUrl(String url) {
         if (url == null) return null;
 
         Pattern p1 = Pattern.compile("github\\.com[:/]+([^/]+)/([^/.]+)(?:\\.git)?/?$");
@@ -56,42 +93,113 @@ public class GitHubService {
     }
 
     /**
-     * Creates an authenticated InputStream for downloading from GitHub API
-     * This handles the authentication and follows redirects properly
+     * Resolves the commit SHA the branch currently points at. Uses the SHA media type so
+     * GitHub answers with just the 40-character hash, costing a single small API call.
      */
-    public InputStream getAuthenticatedStream(URL url) throws IOException, URISyntaxException {
+    public String getBranchHeadSha(String ownerRepo, String branch) throws IOException, URISyntaxException {
+        String urlString = String.format("https://api.github.com/repos/%s/commits/%s", ownerRepo, branch);
+        GitHubHttp.Response response = http.get(new URI(urlString), Map.of("Accept", "application/vnd.github.sha"));
+        if (response.status() != 200) {
+            throw new IOException("Failed to resolve branch head: HTTP " + response.status());
+        }
+        return response.text().trim();
+    }
+
+    /**
+     * Like {@link #getBranchHeadSha}, but sends {@code If-None-Match} with the ETag of the previous check.
+     * An unchanged branch answers 304, which GitHub does not count against the rate limit, so this is
+     * cheap enough to poll.
+     */
+    public HeadCheck getBranchHeadShaIfChanged(String ownerRepo, String branch, String etag) throws IOException, URISyntaxException {
+        String urlString = String.format("https://api.github.com/repos/%s/commits/%s", ownerRepo, branch);
+        GitHubHttp.Response response = http.get(new URI(urlString), etag != null
+                ? Map.of("Accept", "application/vnd.github.sha", "If-None-Match", etag)
+                : Map.of("Accept", "application/vnd.github.sha"));
+        if (response.status() == 304) {
+            return new HeadCheck(null, etag);
+        }
+        if (response.status() != 200) {
+            throw new IOException("Failed to resolve branch head: HTTP " + response.status());
+        }
+        return new HeadCheck(response.text().trim(), response.headers().firstValue("etag").orElse(null));
+    }
+
+    /**
+     * Lists the files that changed from {@code base} to {@code head} with the compare API. Returns null when
+     * the answer is not a plain base-to-head diff: head does not descend from base (e.g. after a force push),
+     * or the file list may have been cut off at GitHub's limit.
+     */
+    public List<FileChange> compareCommits(String ownerRepo, String base, String head) throws IOException, URISyntaxException {
+        // Only the first page carries files; one commit per page keeps the answer small
+        String urlString = String.format("https://api.github.com/repos/%s/compare/%s...%s?per_page=1", ownerRepo, base, head);
+        GitHubHttp.Response response = http.get(new URI(urlString), Map.of());
+        if (response.status() == 404) {
+            return null;
+        }
+        if (response.status() != 200) {
+            throw new IOException("Failed to compare commits: HTTP " + response.status());
+        }
 
-        HttpURLConnection connection = getHttpURLConnection(url);
-
-        // Connect and handle response
-        int responseCode = connection.getResponseCode();
-
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            return connection.getInputStream();
-        } else if (responseCode == HttpURLConnection.HTTP_MOVED_TEMP ||
-                responseCode == HttpURLConnection.HTTP_MOVED_PERM) {
-            // Handle redirect manually if needed
-            String redirectUrl = connection.getHeaderField("Location");
-            connection.disconnect();
-            return getAuthenticatedStream(new URI(redirectUrl).toURL());
-        } else {
-            String errorMsg = "HTTP " + responseCode + ": " + connection.getResponseMessage();
-            connection.disconnect();
-            throw new IOException("Failed to download zipball: " + errorMsg);
+        JsonObject json = JsonParser.parseString(response.text()).getAsJsonObject();
+        String status = json.get("status").getAsString();
+        JsonArray files = json.has("files") ? json.getAsJsonArray("files") : new JsonArray();
+        if (!(status.equals("ahead") || status.equals("identical")) || files.size() >= COMPARE_FILE_LIMIT) {
+            return null;
         }
+
+        List<FileChange> changes = new ArrayList<>();
+        for (JsonElement element : files) {
+            JsonObject file = element.getAsJsonObject();
+            String path = file.get("filename").getAsString();
+            String change = file.get("status").getAsString();
+            String previous = file.has("previous_filename") ? file.get("previous_filename").getAsString() : null;
+            changes.add(new FileChange(path, change.equals("removed") ? null : file.get("sha").getAsString(), previous));
+        }
+        return changes;
     }
 
-    private @NotNull HttpURLConnection getHttpURLConnection(URL url) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    /**
+     * Lists every file of a commit as path to blob SHA, in one call to the recursive trees API.
+     * Submodules are left out, as zipballs leave them out too.
+     */
+    public Map<String, String> getTree(String ownerRepo, String commit) throws IOException, URISyntaxException {
+        String urlString = String.format("https://api.github.com/repos/%s/git/trees/%s?recursive=1", ownerRepo, commit);
+        GitHubHttp.Response response = http.get(new URI(urlString), Map.of());
+        if (response.status() != 200) {
+            throw new IOException("Failed to list repository tree: HTTP " + response.status());
+        }
+
+        JsonObject json = JsonParser.parseString(response.text()).getAsJsonObject();
+        if (json.has("truncated") && json.get("truncated").getAsBoolean()) {
+            throw new IOException("Repository tree is too large for GitHub to list in one call");
+        }
+        Map<String, String> files = new TreeMap<>();
+        for (JsonElement element : json.getAsJsonArray("tree")) {
+            JsonObject entry = element.getAsJsonObject();
+            if (entry.get("type").getAsString().equals("blob")) {
+                files.put(entry.get("path").getAsString(), entry.get("sha").getAsString());
+            }
+        }
+        return files;
+    }
 
-        // Set authentication header
-        connection.setRequestProperty("Authorization", "Bearer " + token);
-        connection.setRequestProperty("Accept", "application/vnd.github+json");
-        connection.setRequestProperty("X-GitHub-Api-Version", "2022-11-28");
-        connection.setRequestProperty("User-Agent", "ResourcepackPlus/1.0");
+    /**
+     * Downloads the raw content of one blob.
+     */
+    public byte[] getBlob(String ownerRepo, String sha) throws IOException, URISyntaxException {
+        String urlString = String.format("https://api.github.com/repos/%s/git/blobs/%s", ownerRepo, sha);
+        GitHubHttp.Response response = http.get(new URI(urlString), Map.of("Accept", "application/vnd.github.raw+json"));
+        if (response.status() != 200) {
+            throw new IOException("Failed to download blob " + sha + ": HTTP " + response.status());
+        }
+        return response.body();
+    }
 
-        // GitHub API returns 302 redirect to actual download URL
-        connection.setInstanceFollowRedirects(true);
-        return connection;
+    /**
+     * Creates an authenticated InputStream for downloading from GitHub API.
+     * Redirects, retries, rate limits and resuming broken transfers are handled by {@link GitHubHttp}.
+     */
+    public InputStream getAuthenticatedStream(URL url) throws IOException, URISyntaxException {
+        return http.download(url.toURI());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.function.BiConsumer;
+
+/**
+ * Publishes packs to a folder on this machine as {@code <sha1>.zip}, for the embedded
+ * {@link PackHttpServer} or any web server that serves the folder.
+ */
+public class LocalPackHost implements PackHost {
+
+    private final File directory;
+    private final String urlPrefix;
+
+    /**
+     * @param urlPrefix public URL of the folder; a file name appended to it gives its download URL
+     */
+    public LocalPackHost(File directory, String urlPrefix) {
+        this.directory = directory;
+        this.urlPrefix = urlPrefix.endsWith("/") ? urlPrefix : urlPrefix + "/";
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public void checkHealth() throws Exception {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory.getAbsolutePath());
+        }
+        if (!directory.canWrite()) {
+            throw new IOException(directory.getAbsolutePath() + " is not writable");
+        }
+    }
+
+    /**
+     * Copies the pack in under its hash. The copy is written to a temp file first and moved into place,
+     * so the web server never serves a half-written file.
+     */
+    @Override
+    public Upload upload(PackFile pack, BiConsumer<Long, Long> progress) throws Exception {
+        String name = pack.sha1() + ".zip";
+        File target = new File(directory, name);
+        long size = pack.file().length();
+        // The name is the content hash, so a file of the same size is the same pack
+        if (target.isFile() && target.length() == size) {
+            return new Upload(name, false);
+        }
+
+        File tmp = new File(directory, name + ".tmp");
+        Files.copy(pack.file().toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        progress.accept(size, size);
+        return new Upload(name, true);
+    }
+
+    @Override
+    public String getPublicUrl(String location) {
+        return urlPrefix + location;
+    }
+
+    /**
+     * Deletes other packs in the folder. Only {@code .zip} and leftover {@code .zip.tmp} files are touched.
+     */
+    @Override
+    public void deleteAllExcept(String location) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".zip") || name.endsWith(".zip.tmp"));
+        if (files == null) return;
+        for (File f : files) {
+            if (!f.getName().equals(location) && !f.delete()) {
+                System.err.println("Failed to delete old pack: " + f.getAbsolutePath());
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import java.io.File;
+import java.util.function.BiConsumer;
+
+/**
+ * A place packs are published to so players can download them, such as Dropbox, a local folder
+ * behind a web server, or an S3-compatible bucket. Implementations are called from worker threads.
+ */
+public interface PackHost {
+
+    /**
+     * A finished pack ready to be published.
+     *
+     * @param dropboxContentHash Dropbox content hash of the file, or {@code null} when not computed
+     * @param sha256             hex SHA-256 of the file, or {@code null} when not computed
+     */
+    record PackFile(File file, String sha1, String dropboxContentHash, String sha256) {}
+
+    /**
+     * Where a pack ended up on a host.
+     *
+     * @param location host-specific path or key of the published file
+     * @param uploaded false when identical content was already there and nothing was sent
+     */
+    record Upload(String location, boolean uploaded) {}
+
+    /**
+     * Short name used in config.yml and messages, e.g. {@code dropbox}.
+     */
+    String getName();
+
+    /**
+     * Throws with a readable reason when the host is misconfigured or cannot be reached.
+     */
+    void checkHealth() throws Exception;
+
+    /**
+     * Makes the pack available on this host, next to any packs already there.
+     *
+     * @param progress receives (bytes sent, total bytes); may be called from several threads
+     */
+    Upload upload(PackFile pack, BiConsumer<Long, Long> progress) throws Exception;
+
+    /**
+     * Direct download URL of a published location.
+     */
+    String getPublicUrl(String location) throws Exception;
+
+    /**
+     * Removes every pack on this host except the one at {@code location}.
+     */
+    void deleteAllExcept(String location) throws Exception;
+}
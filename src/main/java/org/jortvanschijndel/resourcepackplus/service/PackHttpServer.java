@@ -0,0 +1,421 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.jortvanschijndel.resourcepackplus.util.PackSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Small embedded HTTP/1.1 server that hands out resource packs straight from disk.
+ * Packs live in one folder as {@code <sha1>.zip} and are served at {@code /pack/<sha1>.zip}
+ * ({@code /pack.zip} always points at the current default pack); named packs live in a sub-folder
+ * per pack and are served at {@code /pack/<name>/<sha1>.zip}. File bodies are sent with
+ * {@link FileChannel#transferTo}, so the data never passes through the JVM heap.
+ * Supports single byte ranges, ETag/If-None-Match and Last-Modified, and caps concurrent connections.
+ * Other parts of the plugin can accept small POST requests on their own paths (see {@link #addPostRoute}).
+ */
+public class PackHttpServer {
+
+    /**
+     * Answers a POST request on a registered path.
+     */
+    public interface PostHandler {
+        /**
+         * @return HTTP status to reply with
+         */
+        int handle(Map<String, String> headers, byte[] body) throws IOException;
+    }
+
+    private static final Pattern PACK_PATH = Pattern.compile("^/pack/(?:([a-z0-9_-]{1,32})/)?([0-9a-f]{40})\\.zip$");
+    private static final Pattern RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+    private static final int MAX_HEADER_BYTES = 8192;
+    private static final int IDLE_TIMEOUT_MS = 15_000;
+    private static final int MAX_POST_BYTES = 5 * 1024 * 1024;
+
+    private final File packDir;
+    private final Supplier<String> currentSha1;
+    private final String publicUrl;
+    private final InetSocketAddress address;
+    private final int maxConnections;
+    private final Logger log;
+    private final Map<String, PostHandler> postRoutes = new ConcurrentHashMap<>();
+
+    private ServerSocketChannel server;
+    private ExecutorService workers;
+    private Semaphore slots;
+    private volatile boolean running;
+
+    /**
+     * @param packDir        folder holding {@code <sha1>.zip} files, and a sub-folder of them per named pack
+     * @param currentSha1    supplies the SHA-1 of the default pack, served at {@code /pack.zip}
+     * @param publicUrl      base URL players reach this server on, e.g. {@code http://play.example.com:8085}
+     * @param maxConnections connections served at once; further ones get 503
+     */
+    public PackHttpServer(File packDir, Supplier<String> currentSha1, String publicUrl, InetSocketAddress address,
+                          int maxConnections, Logger log) {
+        this.packDir = packDir;
+        this.currentSha1 = currentSha1;
+        this.publicUrl = publicUrl.endsWith("/") ? publicUrl.substring(0, publicUrl.length() - 1) : publicUrl;
+        this.address = address;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.log = log;
+    }
+
+    public void start() throws IOException {
+        if (!packDir.exists() && !packDir.mkdirs()) {
+            throw new IOException("Failed to create pack directory: " + packDir.getAbsolutePath());
+        }
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        slots = new Semaphore(maxConnections);
+        AtomicInteger threadId = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(maxConnections, r -> {
+            Thread t = new Thread(r, "RPP-HTTP-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptLoop, "RPP-HTTP-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (server != null) server.close();
+        } catch (IOException ignored) {
+        }
+        if (workers != null) workers.shutdownNow();
+    }
+
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return address.getPort();
+        }
+    }
+
+    /**
+     * Location of the file served for the given pack and hash.
+     */
+    public File packFile(String pack, String sha1) {
+        return new File(packDir, PackSnapshot.folderOf(pack) + sha1 + ".zip");
+    }
+
+    /**
+     * Public download URL of the given pack and hash.
+     */
+    public String urlFor(String pack, String sha1) {
+        return getPackUrlPrefix() + PackSnapshot.folderOf(pack) + sha1 + ".zip";
+    }
+
+    /**
+     * Public URL of the served folder, with trailing slash; a pack file name appended to it gives its download URL.
+     */
+    public String getPackUrlPrefix() {
+        return publicUrl + "/pack/";
+    }
+
+    public File getPackDir() {
+        return packDir;
+    }
+
+    /**
+     * Accepts POST requests on {@code path} (e.g. {@code /webhook/github}). Bodies need a Content-Length
+     * and are limited to a few MB.
+     */
+    public void addPostRoute(String path, PostHandler handler) {
+        postRoutes.put(path, handler);
+    }
+
+    /**
+     * Public URL of a path on this server.
+     */
+    public String urlOf(String path) {
+        return publicUrl + path;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            SocketChannel ch;
+            try {
+                ch = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) log.log(Level.WARNING, "[RPP] HTTP accept failed", e);
+                continue;
+            }
+
+            if (!slots.tryAcquire()) {
+                try (ch) {
+                    writeHead(ch, 503, "Service Unavailable", Map.of("Retry-After", "2", "Content-Length", "0"), false);
+                } catch (IOException ignored) {
+                }
+                continue;
+            }
+            workers.execute(() -> {
+                try (ch) {
+                    serve(ch);
+                } catch (SocketTimeoutException | ClosedChannelException ignored) {
+                    // Idle keep-alive connection or client went away
+                } catch (IOException e) {
+                    log.fine("[RPP] HTTP connection error: " + e.getMessage());
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+    }
+
+    private void serve(SocketChannel ch) throws IOException {
+        ch.socket().setSoTimeout(IDLE_TIMEOUT_MS);
+        ch.socket().setTcpNoDelay(true);
+        InputStream in = new BufferedInputStream(ch.socket().getInputStream());
+
+        while (running) {
+            String head = readHead(in);
+            if (head == null) return;
+
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3) {
+                writeHead(ch, 400, "Bad Request", Map.of("Content-Length", "0"), false);
+                return;
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+                }
+            }
+
+            String connection = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+            boolean keepAlive = requestLine[2].equals("HTTP/1.1") ? !connection.contains("close") : connection.contains("keep-alive");
+
+            if (!handle(ch, in, requestLine[0], requestLine[1], headers, keepAlive) || !keepAlive) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers one request. Returns false when the connection must be closed afterwards.
+     */
+    private boolean handle(SocketChannel ch, InputStream in, String method, String target, Map<String, String> headers,
+                           boolean keepAlive) throws IOException {
+        String path = target.contains("?") ? target.substring(0, target.indexOf('?')) : target;
+        if (method.equals("POST") && postRoutes.containsKey(path)) {
+            return handlePost(ch, in, postRoutes.get(path), headers, keepAlive);
+        }
+
+        boolean head = method.equals("HEAD");
+        if (!head && !method.equals("GET")) {
+            writeHead(ch, 405, "Method Not Allowed", Map.of("Allow", "GET, HEAD", "Content-Length", "0"), keepAlive);
+            return true;
+        }
+
+        String sha1;
+        String pack = PackSnapshot.DEFAULT;
+        Matcher m = PACK_PATH.matcher(path);
+        if (m.matches()) {
+            sha1 = m.group(2);
+            if (m.group(1) != null) pack = m.group(1);
+        } else if (path.equals("/pack.zip")) {
+            sha1 = currentSha1.get();
+        } else {
+            sha1 = null;
+        }
+        File file = sha1 != null ? packFile(pack, sha1) : null;
+        if (file == null || !file.isFile()) {
+            writeHead(ch, 404, "Not Found", Map.of("Content-Length", "0"), keepAlive);
+            return true;
+        }
+
+        String etag = "\"" + sha1 + "\"";
+        Map<String, String> out = new LinkedHashMap<>();
+        out.put("Content-Type", "application/zip");
+        out.put("Accept-Ranges", "bytes");
+        out.put("ETag", etag);
+        out.put("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(file.lastModified()).atOffset(ZoneOffset.UTC)));
+        // Hash-addressed URLs never change content; /pack.zip may
+        out.put("Cache-Control", m.matches() ? "public, max-age=31536000, immutable" : "no-cache");
+
+        String ifNoneMatch = headers.get("if-none-match");
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(etag))) {
+            out.put("Content-Length", "0");
+            writeHead(ch, 304, "Not Modified", out, keepAlive);
+            return true;
+        }
+
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = fc.size();
+            long start = 0;
+            long end = length - 1;
+            int status = 200;
+            String reason = "OK";
+
+            String range = headers.get("range");
+            String ifRange = headers.get("if-range");
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                Matcher r = RANGE.matcher(range.trim());
+                long[] bounds = r.matches() ? parseRange(r.group(1), r.group(2), length) : null;
+                if (bounds == null) {
+                    out.put("Content-Range", "bytes */" + length);
+                    out.put("Content-Length", "0");
+                    writeHead(ch, 416, "Range Not Satisfiable", out, keepAlive);
+                    return true;
+                }
+                start = bounds[0];
+                end = bounds[1];
+                status = 206;
+                reason = "Partial Content";
+                out.put("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+
+            long count = end - start + 1;
+            out.put("Content-Length", String.valueOf(Math.max(0, count)));
+            writeHead(ch, status, reason, out, keepAlive);
+            if (head) return true;
+
+            long pos = start;
+            while (pos <= end) {
+                long sent = fc.transferTo(pos, end - pos + 1, ch);
+                if (sent <= 0 && !ch.isOpen()) return false;
+                pos += sent;
+            }
+        }
+        return true;
+    }
+
+    private boolean handlePost(SocketChannel ch, InputStream in, PostHandler handler, Map<String, String> headers,
+                               boolean keepAlive) throws IOException {
+        long length;
+        try {
+            length = Long.parseLong(headers.getOrDefault("content-length", "-1"));
+        } catch (NumberFormatException e) {
+            length = -1;
+        }
+        if (length < 0) {
+            writeHead(ch, 411, "Length Required", Map.of("Content-Length", "0"), false);
+            return false;
+        }
+        if (length > MAX_POST_BYTES) {
+            writeHead(ch, 413, "Content Too Large", Map.of("Content-Length", "0"), false);
+            return false;
+        }
+        byte[] body = in.readNBytes((int) length);
+        if (body.length < length) return false;
+
+        int status;
+        try {
+            status = handler.handle(headers, body);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "[RPP] Failed to handle POST request", e);
+            status = 500;
+        }
+        writeHead(ch, status, reasonOf(status), Map.of("Content-Length", "0"), keepAlive);
+        return true;
+    }
+
+    private static String reasonOf(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 503 -> "Service Unavailable";
+            default -> status >= 500 ? "Internal Server Error" : "Status " + status;
+        };
+    }
+
+    /**
+     * Resolves a single byte range against the file length, or returns null if it cannot be satisfied.
+     */
+    private static long[] parseRange(String from, String to, long length) {
+        try {
+            long start;
+            long end;
+            if (from.isEmpty()) {
+                if (to.isEmpty()) return null;
+                long suffix = Long.parseLong(to);
+                if (suffix == 0) return null;
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(from);
+                end = to.isEmpty() ? length - 1 : Math.min(Long.parseLong(to), length - 1);
+            }
+            if (start >= length || start > end) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(512);
+        int matched = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) return null;
+            buf.write(b);
+            if (buf.size() > MAX_HEADER_BYTES) throw new IOException("Request header too large");
+            // Looking for CRLF CRLF
+            matched = (b == '\r' && (matched == 0 || matched == 2)) || (b == '\n' && (matched == 1 || matched == 3)) ? matched + 1 : (b == '\r' ? 1 : 0);
+            if (matched == 4) {
+                String head = buf.toString(StandardCharsets.ISO_8859_1);
+                return head.substring(0, head.length() - 4);
+            }
+        }
+    }
+
+    private static void writeHead(SocketChannel ch, int status, String reason, Map<String, String> headers, boolean keepAlive) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        sb.append("Server: ResourcepackPlus\r\n");
+        sb.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        headers.forEach((k, v) -> sb.append(k).append(": ").append(v).append("\r\n"));
+        sb.append("\r\n");
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Publishes a pack to several {@link PackHost}s at once. Every step runs on all hosts in parallel,
+ * so publishing takes as long as the slowest host instead of the sum of all of them.
+ * Old packs are only removed in {@link #deleteAllExcept} after the caller has switched to the new URL,
+ * so the live link never points at a deleted file.
+ */
+public class PackPublisher {
+
+    /**
+     * Outcome of publishing to one host. {@code error} is set when any step failed.
+     */
+    public record Result(PackHost host, String location, String url, boolean uploaded, Exception error) {
+        public boolean ok() {
+            return error == null;
+        }
+    }
+
+    private final List<PackHost> hosts;
+
+    /**
+     * @param hosts publish targets; the first one is the primary whose URL is sent to players
+     */
+    public PackPublisher(List<PackHost> hosts) {
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("At least one pack host is required");
+        }
+        this.hosts = List.copyOf(hosts);
+    }
+
+    public List<PackHost> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Runs every host's health check. Returns the hosts that failed with their error (empty when all are fine).
+     */
+    public Map<PackHost, Exception> checkHealth() {
+        List<Exception> errors = runAll(host -> {
+            try {
+                host.checkHealth();
+                return null;
+            } catch (Exception e) {
+                return e;
+            }
+        });
+        Map<PackHost, Exception> failed = new LinkedHashMap<>();
+        for (int i = 0; i < hosts.size(); i++) {
+            if (errors.get(i) != null) failed.put(hosts.get(i), errors.get(i));
+        }
+        return failed;
+    }
+
+    /**
+     * Uploads the pack and resolves its download URL on every host. Results are in host order.
+     *
+     * @param progress supplies the upload progress callback for each host
+     */
+    public List<Result> upload(PackHost.PackFile pack, Function<PackHost, BiConsumer<Long, Long>> progress) {
+        return runAll(host -> {
+            try {
+                PackHost.Upload upload = host.upload(pack, progress.apply(host));
+                return new Result(host, upload.location(), host.getPublicUrl(upload.location()), upload.uploaded(), null);
+            } catch (Exception e) {
+                return new Result(host, null, null, false, e);
+            }
+        });
+    }
+
+    /**
+     * Removes old packs from every host that published successfully. Failures are logged and otherwise ignored,
+     * since the new pack is already live.
+     */
+    public void deleteAllExcept(List<Result> published) {
+        List<Result> ok = published.stream().filter(Result::ok).toList();
+        try (ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, ok.size()))) {
+            CompletableFuture.allOf(ok.stream().map(r -> CompletableFuture.runAsync(() -> {
+                try {
+                    r.host().deleteAllExcept(r.location());
+                } catch (Exception e) {
+                    System.err.println("Failed to remove old packs from " + r.host().getName() + ": " + e.getMessage());
+                }
+            }, pool)).toArray(CompletableFuture[]::new)).join();
+        }
+    }
+
+    private <T> List<T> runAll(Function<PackHost, T> task) {
+        if (hosts.size() == 1) {
+            // Results may be null, which List.of does not allow
+            return Collections.singletonList(task.apply(hosts.getFirst()));
+        }
+        try (ExecutorService pool = Executors.newFixedThreadPool(hosts.size())) {
+            List<CompletableFuture<T>> futures = hosts.stream()
+                    .map(host -> CompletableFuture.supplyAsync(() -> task.apply(host), pool))
+                    .toList();
+            return futures.stream().map(CompletableFuture::join).toList();
+        }
+    }
+}
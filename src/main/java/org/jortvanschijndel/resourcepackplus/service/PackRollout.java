@@ -0,0 +1,252 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerResourcePackStatusEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jortvanschijndel.resourcepackplus.util.Messaging;
+import org.jortvanschijndel.resourcepackplus.util.PackSnapshot;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Pushes a new pack to everyone online who should have it, without a restart. Players are sent the pack in
+ * batches of {@code batchSize} every {@code intervalTicks} through {@link PackSelector#apply}, which removes
+ * the pack it replaces by its UUID first, so clients swap packs instead of stacking them. Each player's
+ * progress is followed through their resource pack status, and failed or timed out sends are retried up to
+ * {@code retries} times.
+ * Each pack has its own rollout, so publishing one pack does not cut short the rollout of another.
+ * All methods must be called on the main thread.
+ */
+public class PackRollout {
+
+    public enum State { QUEUED, SENT, ACCEPTED, DOWNLOADED, LOADED, DECLINED, FAILED }
+
+    private static final long REPORT_INTERVAL_MS = 5000;
+
+    private static final class Entry {
+        State state = State.QUEUED;
+        int attempts;
+        long sentAt;
+    }
+
+    private static final class Run {
+        final PackSnapshot pack;
+        final CommandSender reporter;
+        final Map<UUID, Entry> entries = new LinkedHashMap<>();
+        final ArrayDeque<UUID> queue = new ArrayDeque<>();
+        BukkitTask task;
+        long lastReport;
+
+        Run(PackSnapshot pack, CommandSender reporter) {
+            this.pack = pack;
+            this.reporter = reporter;
+        }
+    }
+
+    private final Plugin plugin;
+    private final PackStatusTracker tracker;
+    private final PackSelector selector;
+    private final int batchSize;
+    private final int intervalTicks;
+    private final int retries;
+    private final long timeoutMillis;
+
+    private final Map<String, Run> runs = new LinkedHashMap<>();
+
+    public PackRollout(Plugin plugin, PackStatusTracker tracker, PackSelector selector,
+                       int batchSize, int intervalTicks, int retries, int timeoutSeconds) {
+        this.plugin = plugin;
+        this.tracker = tracker;
+        this.selector = selector;
+        this.batchSize = Math.max(1, batchSize);
+        this.intervalTicks = Math.max(1, intervalTicks);
+        this.retries = Math.max(0, retries);
+        this.timeoutMillis = Math.max(5, timeoutSeconds) * 1000L;
+    }
+
+    public static PackRollout fromConfig(Plugin plugin, PackStatusTracker tracker, PackSelector selector,
+                                         ConfigurationSection section) {
+        return new PackRollout(plugin, tracker, selector,
+                section.getInt("batchSize", 10),
+                section.getInt("intervalTicks", 20),
+                section.getInt("retries", 2),
+                section.getInt("timeoutSeconds", 120));
+    }
+
+    /**
+     * Starts pushing {@code pack} to everyone online whose pack rules include it, replacing a rollout of the
+     * same pack that is still running.
+     *
+     * @param reporter receives progress messages
+     */
+    public void start(PackSnapshot pack, CommandSender reporter) {
+        cancel(pack.name());
+        Run run = new Run(pack, reporter);
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            if (!selector.wants(player, pack.id())) continue;
+            run.entries.put(player.getUniqueId(), new Entry());
+            run.queue.add(player.getUniqueId());
+        }
+        if (run.entries.isEmpty()) {
+            Messaging.sendMini(reporter, "<green>[RPP] No players online need this pack; it will be sent on join.");
+            return;
+        }
+        Messaging.sendMini(reporter, "<gray>[RPP] Rolling out the new pack to " + run.entries.size() + " player(s)…");
+        run.lastReport = System.currentTimeMillis();
+        run.task = Bukkit.getScheduler().runTaskTimer(plugin, () -> tick(run), 1L, intervalTicks);
+        runs.put(pack.name(), run);
+    }
+
+    /**
+     * Stops every running rollout.
+     */
+    public void cancel() {
+        runs.values().forEach(run -> run.task.cancel());
+        runs.clear();
+    }
+
+    /**
+     * Stops the rollout of one pack, if it is running.
+     */
+    public void cancel(String packName) {
+        Run run = runs.remove(packName);
+        if (run != null) {
+            run.task.cancel();
+        }
+    }
+
+    public boolean isRunning() {
+        return !runs.isEmpty();
+    }
+
+    /**
+     * Names of the packs that are being rolled out, in the order they started.
+     */
+    public Set<String> getRunning() {
+        return Collections.unmodifiableSet(runs.keySet());
+    }
+
+    /**
+     * Counts of players per state in the rollout of {@code packName}, e.g. for {@code /rpp stats}.
+     * Empty when that pack is not being rolled out.
+     */
+    public Map<State, Integer> getCounts(String packName) {
+        Map<State, Integer> counts = new EnumMap<>(State.class);
+        Run run = runs.get(packName);
+        if (run == null) return counts;
+        for (Entry e : run.entries.values()) {
+            counts.merge(e.state, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Feeds a player's pack status into the rollout of that pack. Statuses for other packs are ignored.
+     */
+    public void onStatus(Player player, UUID packId, PlayerResourcePackStatusEvent.Status status) {
+        for (Run run : runs.values()) {
+            if (!run.pack.id().equals(packId)) continue;
+            Entry e = run.entries.get(player.getUniqueId());
+            if (e == null) continue;
+
+            switch (status) {
+                case ACCEPTED -> e.state = State.ACCEPTED;
+                case DOWNLOADED -> e.state = State.DOWNLOADED;
+                case SUCCESSFULLY_LOADED -> e.state = State.LOADED;
+                case DECLINED -> e.state = State.DECLINED;
+                case FAILED_DOWNLOAD, FAILED_RELOAD, INVALID_URL, DISCARDED -> retryOrFail(run, player.getUniqueId(), e);
+            }
+        }
+    }
+
+    /**
+     * Forgets a player who left; they get the current packs on their next join anyway.
+     */
+    public void onQuit(UUID player) {
+        for (Run run : runs.values()) {
+            if (run.entries.remove(player) != null) {
+                run.queue.remove(player);
+            }
+        }
+    }
+
+    private void tick(Run run) {
+        for (int i = 0; i < batchSize && !run.queue.isEmpty(); i++) {
+            UUID id = run.queue.poll();
+            Entry e = run.entries.get(id);
+            Player player = Bukkit.getPlayer(id);
+            if (e == null || player == null || !player.isOnline()) {
+                run.entries.remove(id);
+                continue;
+            }
+            // Joined after the switch and already got it
+            if (tracker.hasLoaded(player, run.pack.id())) {
+                e.state = State.LOADED;
+                continue;
+            }
+            // Moved to a world that does not use this pack
+            if (!selector.wants(player, run.pack.id())) {
+                run.entries.remove(id);
+                continue;
+            }
+            selector.apply(player);
+            e.attempts++;
+            e.sentAt = System.currentTimeMillis();
+            e.state = State.SENT;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean inFlight = false;
+        for (Map.Entry<UUID, Entry> me : run.entries.entrySet()) {
+            Entry e = me.getValue();
+            if (e.state == State.SENT || e.state == State.ACCEPTED || e.state == State.DOWNLOADED) {
+                if (now - e.sentAt > timeoutMillis) {
+                    retryOrFail(run, me.getKey(), e);
+                }
+                inFlight |= e.state != State.FAILED;
+            }
+        }
+
+        if (run.queue.isEmpty() && !inFlight) {
+            Messaging.sendMini(run.reporter, "<green>[RPP] Rollout finished: " + summary(run));
+            run.task.cancel();
+            runs.remove(run.pack.name(), run);
+            return;
+        }
+        if (now - run.lastReport >= REPORT_INTERVAL_MS) {
+            run.lastReport = now;
+            Messaging.sendMini(run.reporter, "<gray>[RPP] Rollout: " + summary(run));
+        }
+    }
+
+    private void retryOrFail(Run run, UUID id, Entry e) {
+        selector.forget(id, run.pack.id());
+        if (e.attempts <= retries) {
+            e.state = State.QUEUED;
+            run.queue.add(id);
+        } else {
+            e.state = State.FAILED;
+        }
+    }
+
+    private String summary(Run run) {
+        Map<State, Integer> counts = getCounts(run.pack.name());
+        int total = run.entries.size();
+        int pending = total - counts.getOrDefault(State.LOADED, 0)
+                - counts.getOrDefault(State.DECLINED, 0) - counts.getOrDefault(State.FAILED, 0);
+        String prefix = PackSnapshot.DEFAULT.equals(run.pack.name()) ? "" : run.pack.name() + ": ";
+        return prefix + counts.getOrDefault(State.LOADED, 0) + "/" + total + " loaded, "
+                + pending + " pending, " + counts.getOrDefault(State.FAILED, 0) + " failed, "
+                + counts.getOrDefault(State.DECLINED, 0) + " declined";
+    }
+}
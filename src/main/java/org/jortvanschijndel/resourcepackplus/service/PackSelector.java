@@ -0,0 +1,188 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import net.kyori.adventure.resource.ResourcePackInfo;
+import net.kyori.adventure.resource.ResourcePackRequest;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerResourcePackStatusEvent.Status;
+import org.jortvanschijndel.resourcepackplus.util.PackSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Decides which packs each player gets and keeps them in sync. Rules from {@code packRules} are checked
+ * in order and every matching rule adds its packs, so a player can get a shared base pack plus packs for
+ * the world they are in. Packs listed later are layered on top of earlier ones.
+ * <p>
+ * {@link #apply} compares what a player should have with what they were last sent, removes packs they no
+ * longer need and only sends the missing ones. Requests are cached per pack combination, so the same
+ * combination is never built twice. Everything except {@link #select} must be called on the main thread.
+ */
+public class PackSelector {
+
+    /**
+     * Adds {@code packs} for players in one of {@code worlds} (any world when empty) who have
+     * {@code permission} (everyone when null).
+     */
+    public record Rule(List<String> worlds, String permission, List<String> packs) {
+        boolean matches(Player player) {
+            if (!worlds.isEmpty() && !worlds.contains(player.getWorld().getName().toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+            return permission == null || player.hasPermission(permission);
+        }
+    }
+
+    private final List<Rule> rules;
+    private final Supplier<Map<String, PackSnapshot>> packs;
+    private final PackStatusTracker tracker;
+
+    private final Map<List<UUID>, ResourcePackRequest> requests = new ConcurrentHashMap<>();
+    private final Map<UUID, List<UUID>> applied = new HashMap<>();
+
+    /**
+     * @param packs supplies the published packs by name, e.g. {@code plugin::getPacks}
+     */
+    public PackSelector(List<Rule> rules, Supplier<Map<String, PackSnapshot>> packs, PackStatusTracker tracker) {
+        this.rules = List.copyOf(rules);
+        this.packs = packs;
+        this.tracker = tracker;
+    }
+
+    public static PackSelector fromConfig(List<Map<?, ?>> config, Supplier<Map<String, PackSnapshot>> packs,
+                                          PackStatusTracker tracker) {
+        List<Rule> rules = new ArrayList<>();
+        for (Map<?, ?> entry : config) {
+            List<String> worlds = new ArrayList<>();
+            if (entry.get("worlds") instanceof List<?> list) {
+                list.forEach(w -> worlds.add(String.valueOf(w).toLowerCase(Locale.ROOT)));
+            }
+            Object permission = entry.get("permission");
+            List<String> names = new ArrayList<>();
+            if (entry.get("packs") instanceof List<?> list) {
+                list.forEach(p -> names.add(String.valueOf(p).toLowerCase(Locale.ROOT)));
+            }
+            if (!names.isEmpty()) {
+                rules.add(new Rule(worlds, permission != null ? String.valueOf(permission) : null, names));
+            }
+        }
+        return new PackSelector(rules, packs, tracker);
+    }
+
+    /**
+     * Packs the player should have, bottom layer first. Without rules everyone gets every pack.
+     * Packs named in a rule but not built yet are left out.
+     */
+    public List<PackSnapshot> select(Player player) {
+        Map<String, PackSnapshot> available = packs.get();
+        // Keyed by id: two names holding identical content are one pack to the client
+        Map<UUID, PackSnapshot> selected = new LinkedHashMap<>();
+        if (rules.isEmpty()) {
+            available.values().forEach(pack -> selected.putIfAbsent(pack.id(), pack));
+        }
+        for (Rule rule : rules) {
+            if (!rule.matches(player)) continue;
+            for (String name : rule.packs()) {
+                PackSnapshot pack = available.get(name);
+                if (pack != null) selected.putIfAbsent(pack.id(), pack);
+            }
+        }
+        return List.copyOf(selected.values());
+    }
+
+    /**
+     * Whether the player should have the pack with this id.
+     */
+    public boolean wants(Player player, UUID packId) {
+        for (PackSnapshot pack : select(player)) {
+            if (pack.id().equals(packId)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Brings the player's packs in line with {@link #select}. Packs that are no longer wanted are removed.
+     * When the packs the player keeps are still at the bottom in the right order, only the missing ones are
+     * sent on top; otherwise all packs are sent again so the layering is right. Returns the packs sent.
+     */
+    public List<PackSnapshot> apply(Player player) {
+        List<PackSnapshot> desired = select(player);
+        List<UUID> desiredIds = desired.stream().map(PackSnapshot::id).toList();
+        List<UUID> current = applied.getOrDefault(player.getUniqueId(), List.of());
+        if (current.equals(desiredIds)) {
+            return List.of();
+        }
+
+        List<UUID> kept = current.stream().filter(desiredIds::contains).toList();
+        boolean layered = desiredIds.subList(0, kept.size()).equals(kept);
+        List<UUID> remove = layered ? current.stream().filter(id -> !desiredIds.contains(id)).toList() : current;
+        if (!remove.isEmpty()) {
+            player.removeResourcePacks(remove.getFirst(), remove.subList(1, remove.size()).toArray(UUID[]::new));
+        }
+
+        List<PackSnapshot> send = layered ? desired.subList(kept.size(), desired.size()) : desired;
+        if (desiredIds.isEmpty()) {
+            applied.remove(player.getUniqueId());
+        } else {
+            applied.put(player.getUniqueId(), desiredIds);
+        }
+        if (send.isEmpty()) {
+            return List.of();
+        }
+        player.sendResourcePacks(requestFor(send));
+        for (PackSnapshot pack : send) {
+            tracker.onSent(player, pack);
+        }
+        return send;
+    }
+
+    /**
+     * Marks a pack as not sent, so the next {@link #apply} sends it again.
+     */
+    public void forget(UUID player, UUID packId) {
+        List<UUID> current = applied.get(player);
+        if (current != null && current.contains(packId)) {
+            applied.put(player, current.stream().filter(id -> !id.equals(packId)).toList());
+        }
+    }
+
+    /**
+     * Packs the client declined or could not load are forgotten, so they are retried on the next change.
+     */
+    public void onStatus(Player player, UUID packId, Status status) {
+        switch (status) {
+            case DECLINED, FAILED_DOWNLOAD, FAILED_RELOAD, INVALID_URL, DISCARDED -> forget(player.getUniqueId(), packId);
+            default -> {
+            }
+        }
+    }
+
+    public void onQuit(UUID player) {
+        applied.remove(player);
+    }
+
+    /**
+     * Drops cached requests after packs were published or replaced.
+     */
+    public void invalidate() {
+        requests.clear();
+    }
+
+    private ResourcePackRequest requestFor(List<PackSnapshot> send) {
+        if (send.size() == 1) {
+            return send.getFirst().request();
+        }
+        List<UUID> key = send.stream().map(PackSnapshot::id).toList();
+        return requests.computeIfAbsent(key, k -> {
+            List<ResourcePackInfo> infos = send.stream().map(PackSnapshot::info).toList();
+            return PackSnapshot.requestOf(infos);
+        });
+    }
+}
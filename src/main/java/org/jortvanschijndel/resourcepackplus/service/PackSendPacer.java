@@ -0,0 +1,143 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Spreads resource pack sends over time so a wave of joins does not hit the pack host all at once.
+ * Sends are limited by a token bucket ({@code sendsPerSecond}, bursting up to {@code burst}); players with a
+ * priority permission go first, everyone else in join order. While the server's average tick time is above
+ * {@code highMspt}, sending pauses for {@code lagDelayTicks} so downloads do not pile onto a lagging server.
+ * All methods must be called on the main thread.
+ */
+public class PackSendPacer {
+
+    private record Pending(UUID player, int priority, long seq, Consumer<Player> send) {}
+
+    private final Plugin plugin;
+    private final double tokensPerTick;
+    private final double burst;
+    private final List<String> priorityPermissions;
+    private final double highMspt;
+    private final int lagDelayTicks;
+
+    private final PriorityQueue<Pending> queue = new PriorityQueue<>(
+            Comparator.comparingInt(Pending::priority).thenComparingLong(Pending::seq));
+    private final Map<UUID, Pending> byPlayer = new HashMap<>();
+    private long seq;
+    private double tokens;
+    private int pausedTicks;
+    private BukkitTask task;
+
+    public PackSendPacer(Plugin plugin, double sendsPerSecond, int burst, List<String> priorityPermissions,
+                         double highMspt, int lagDelayTicks) {
+        this.plugin = plugin;
+        this.tokensPerTick = Math.max(0.05, sendsPerSecond) / 20.0;
+        this.burst = Math.max(1, burst);
+        this.priorityPermissions = List.copyOf(priorityPermissions);
+        this.highMspt = highMspt;
+        this.lagDelayTicks = Math.max(0, lagDelayTicks);
+        this.tokens = this.burst;
+    }
+
+    public static PackSendPacer fromConfig(Plugin plugin, ConfigurationSection section) {
+        return new PackSendPacer(plugin,
+                section.getDouble("sendsPerSecond", 20),
+                section.getInt("burst", 40),
+                section.getStringList("priorityPermissions"),
+                section.getDouble("highMspt", 45),
+                section.getInt("lagDelayTicks", 20));
+    }
+
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        queue.clear();
+        byPlayer.clear();
+    }
+
+    /**
+     * Queues {@code send} for the player. A player already waiting keeps their place, and only the latest
+     * action is run.
+     */
+    public void enqueue(Player player, Consumer<Player> send) {
+        Pending previous = byPlayer.get(player.getUniqueId());
+        Pending pending = previous != null
+                ? new Pending(player.getUniqueId(), previous.priority(), previous.seq(), send)
+                : new Pending(player.getUniqueId(), priorityOf(player), seq++, send);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        queue.add(pending);
+        byPlayer.put(player.getUniqueId(), pending);
+    }
+
+    /**
+     * Drops a player's pending send, e.g. when they leave.
+     */
+    public void remove(UUID player) {
+        Pending pending = byPlayer.remove(player);
+        if (pending != null) {
+            queue.remove(pending);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void tick() {
+        tokens = Math.min(burst, tokens + tokensPerTick);
+
+        if (pausedTicks > 0) {
+            pausedTicks--;
+            return;
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+        if (highMspt > 0 && Bukkit.getServer().getAverageTickTime() > highMspt) {
+            pausedTicks = lagDelayTicks;
+            return;
+        }
+
+        while (tokens >= 1 && !queue.isEmpty()) {
+            Pending next = queue.poll();
+            byPlayer.remove(next.player());
+            Player player = Bukkit.getPlayer(next.player());
+            if (player == null || !player.isOnline()) {
+                continue;
+            }
+            next.send().accept(player);
+            tokens -= 1;
+        }
+    }
+
+    private int priorityOf(Player player) {
+        for (int i = 0; i < priorityPermissions.size(); i++) {
+            if (player.hasPermission(priorityPermissions.get(i))) {
+                return i;
+            }
+        }
+        return priorityPermissions.size();
+    }
+}
@@ -0,0 +1,118 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerResourcePackStatusEvent.Status;
+import org.jortvanschijndel.resourcepackplus.util.LatencyWindow;
+import org.jortvanschijndel.resourcepackplus.util.PackSnapshot;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows every pack sent to a player through its status updates. Records how long it took from the send
+ * to ACCEPTED, DOWNLOADED and SUCCESSFULLY_LOADED, counts how each send ended, and remembers which packs
+ * each online player has loaded so they are not sent again. Latencies are kept in fixed-size windows,
+ * so memory stays bounded. Safe to read from other threads (e.g. bStats).
+ */
+public class PackStatusTracker {
+
+    private static final int WINDOW = 1024;
+
+    private record Key(UUID player, UUID pack) {}
+
+    private final Map<Key, Long> sentAt = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<UUID>> loaded = new ConcurrentHashMap<>();
+    private final Map<Status, AtomicLong> outcomes = new EnumMap<>(Status.class);
+
+    private final LatencyWindow accepted = new LatencyWindow(WINDOW);
+    private final LatencyWindow downloaded = new LatencyWindow(WINDOW);
+    private final LatencyWindow loadedLatency = new LatencyWindow(WINDOW);
+
+    public PackStatusTracker() {
+        for (Status status : Status.values()) {
+            outcomes.put(status, new AtomicLong());
+        }
+    }
+
+    /**
+     * Records that the pack was just sent to the player.
+     */
+    public void onSent(Player player, PackSnapshot pack) {
+        sentAt.put(new Key(player.getUniqueId(), pack.id()), System.nanoTime());
+    }
+
+    public void onStatus(Player player, UUID packId, Status status) {
+        Key key = new Key(player.getUniqueId(), packId);
+        Long start = sentAt.get(key);
+        long elapsed = start != null ? (System.nanoTime() - start) / 1_000_000 : -1;
+
+        switch (status) {
+            case ACCEPTED -> {
+                if (elapsed >= 0) accepted.add(elapsed);
+            }
+            case DOWNLOADED -> {
+                if (elapsed >= 0) downloaded.add(elapsed);
+            }
+            case SUCCESSFULLY_LOADED -> {
+                if (elapsed >= 0) loadedLatency.add(elapsed);
+                loaded.computeIfAbsent(player.getUniqueId(), k -> ConcurrentHashMap.newKeySet()).add(packId);
+            }
+            default -> {
+                // Declined, failed or discarded: the client no longer has this pack
+                Set<UUID> packs = loaded.get(player.getUniqueId());
+                if (packs != null) packs.remove(packId);
+            }
+        }
+        // Only count sends we made, not statuses for packs added by other plugins
+        if (!isIntermediate(status) && sentAt.remove(key) != null) {
+            outcomes.get(status).incrementAndGet();
+        }
+    }
+
+    /**
+     * Whether the player has successfully loaded this pack since joining.
+     */
+    public boolean hasLoaded(Player player, UUID packId) {
+        Set<UUID> packs = loaded.get(player.getUniqueId());
+        return packs != null && packs.contains(packId);
+    }
+
+    /**
+     * Clients drop server packs when they disconnect, so forget everything about the player.
+     */
+    public void onQuit(UUID player) {
+        loaded.remove(player);
+        sentAt.keySet().removeIf(k -> k.player().equals(player));
+    }
+
+    public LatencyWindow getAccepted() {
+        return accepted;
+    }
+
+    public LatencyWindow getDownloaded() {
+        return downloaded;
+    }
+
+    public LatencyWindow getLoaded() {
+        return loadedLatency;
+    }
+
+    /**
+     * How sends ended since startup, by final status.
+     */
+    public Map<Status, Long> getOutcomes() {
+        Map<Status, Long> result = new EnumMap<>(Status.class);
+        outcomes.forEach((status, count) -> {
+            if (!isIntermediate(status)) result.put(status, count.get());
+        });
+        return result;
+    }
+
+    private static boolean isIntermediate(Status status) {
+        return status == Status.ACCEPTED || status == Status.DOWNLOADED;
+    }
+}
@@ -0,0 +1,284 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.jortvanschijndel.resourcepackplus.util.HashUtil;
+import org.jortvanschijndel.resourcepackplus.util.MultiDigest;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes packs to an S3-compatible bucket (AWS S3, MinIO, Cloudflare R2, ...) as {@code <prefix><sha1>.zip}.
+ * Requests are signed with AWS Signature Version 4 using only the JDK HTTP client.
+ */
+public class S3PackHost implements PackHost {
+
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final Pattern PACK_KEY = Pattern.compile("[0-9a-f]{40}\\.zip");
+
+    /**
+     * Connection settings.
+     *
+     * @param endpoint  service URL, e.g. {@code https://s3.eu-west-1.amazonaws.com} or {@code http://localhost:9000}
+     * @param prefix    key prefix packs are stored under, e.g. {@code resourcepacks/}
+     * @param pathStyle address the bucket as {@code endpoint/bucket} instead of {@code bucket.endpoint} (needed for MinIO)
+     * @param publicRead upload objects with the {@code public-read} ACL
+     * @param publicUrl base URL players download from; empty to use the bucket URL
+     */
+    public record Settings(String endpoint, String region, String bucket, String prefix, String accessKey,
+                           String secretKey, boolean pathStyle, boolean publicRead, String publicUrl) {}
+
+    private final Settings settings;
+    private final URI endpoint;
+    private final String prefix;
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    public S3PackHost(Settings settings) {
+        this.settings = settings;
+        String ep = settings.endpoint();
+        this.endpoint = URI.create(ep.endsWith("/") ? ep.substring(0, ep.length() - 1) : ep);
+        String p = settings.prefix() == null ? "" : settings.prefix();
+        this.prefix = p.isEmpty() || p.endsWith("/") ? p : p + "/";
+    }
+
+    @Override
+    public String getName() {
+        return "s3";
+    }
+
+    @Override
+    public void checkHealth() throws Exception {
+        HttpResponse<Void> res = send("HEAD", "", Map.of(), EMPTY_SHA256, Map.of(), HttpRequest.BodyPublishers.noBody(),
+                HttpResponse.BodyHandlers.discarding());
+        if (res.statusCode() != 200) {
+            throw new IOException("Bucket " + settings.bucket() + " not reachable (HTTP " + res.statusCode() + ")");
+        }
+    }
+
+    /**
+     * Uploads with a single PUT. Keys are named after the content hash, so an object of the same size
+     * under the same key is left alone.
+     */
+    @Override
+    public Upload upload(PackFile pack, BiConsumer<Long, Long> progress) throws Exception {
+        String key = prefix + pack.sha1() + ".zip";
+        long size = pack.file().length();
+
+        HttpResponse<Void> head = send("HEAD", key, Map.of(), EMPTY_SHA256, Map.of(), HttpRequest.BodyPublishers.noBody(),
+                HttpResponse.BodyHandlers.discarding());
+        if (head.statusCode() == 200
+                && head.headers().firstValueAsLong("Content-Length").orElse(-1) == size) {
+            return new Upload(key, false);
+        }
+
+        // Normally computed while the pack was written; hash the file only when it wasn't
+        String payloadHash = pack.sha256() != null ? pack.sha256()
+                : MultiDigest.of(MultiDigest.Kind.SHA256).updateFromFile(pack.file()).hex(MultiDigest.Kind.SHA256);
+
+        Map<String, String> headers = new TreeMap<>();
+        headers.put("content-type", "application/zip");
+        if (settings.publicRead()) {
+            headers.put("x-amz-acl", "public-read");
+        }
+
+        AtomicLong sent = new AtomicLong();
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> {
+                    try {
+                        return new FilterInputStream(Files.newInputStream(pack.file().toPath())) {
+                            @Override
+                            public int read(byte[] b, int off, int len) throws IOException {
+                                int n = super.read(b, off, len);
+                                if (n > 0) progress.accept(sent.addAndGet(n), size);
+                                return n;
+                            }
+                        };
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }), size);
+
+        HttpResponse<String> res = send("PUT", key, Map.of(), payloadHash, headers, body, HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() != 200) {
+            throw new IOException("S3 upload failed (HTTP " + res.statusCode() + "): " + res.body());
+        }
+        return new Upload(key, true);
+    }
+
+    @Override
+    public String getPublicUrl(String location) {
+        String base = settings.publicUrl();
+        if (base != null && !base.isBlank()) {
+            return (base.endsWith("/") ? base : base + "/") + encodePath(location);
+        }
+        return objectUri(location).toString();
+    }
+
+    /**
+     * Deletes other packs under the prefix. Only keys that look like {@code <sha1>.zip} are touched,
+     * so other files in the bucket are safe even with an empty prefix.
+     */
+    @Override
+    public void deleteAllExcept(String location) throws Exception {
+        for (String key : listKeys()) {
+            if (key.equals(location) || !PACK_KEY.matcher(key.substring(prefix.length())).matches()) continue;
+            HttpResponse<String> res = send("DELETE", key, Map.of(), EMPTY_SHA256, Map.of(),
+                    HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofString());
+            if (res.statusCode() != 204 && res.statusCode() != 200) {
+                System.err.println("Failed to delete old pack s3://" + settings.bucket() + "/" + key + " (HTTP " + res.statusCode() + ")");
+            }
+        }
+    }
+
+    private List<String> listKeys() throws Exception {
+        List<String> keys = new ArrayList<>();
+        String token = null;
+        do {
+            Map<String, String> query = new TreeMap<>();
+            query.put("list-type", "2");
+            query.put("prefix", prefix);
+            if (token != null) query.put("continuation-token", token);
+
+            HttpResponse<byte[]> res = send("GET", "", query, EMPTY_SHA256, Map.of(), HttpRequest.BodyPublishers.noBody(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            if (res.statusCode() != 200) {
+                throw new IOException("S3 list failed (HTTP " + res.statusCode() + ")");
+            }
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new ByteArrayInputStream(res.body()));
+            NodeList contents = doc.getElementsByTagName("Key");
+            for (int i = 0; i < contents.getLength(); i++) {
+                keys.add(contents.item(i).getTextContent());
+            }
+            NodeList truncated = doc.getElementsByTagName("IsTruncated");
+            NodeList next = doc.getElementsByTagName("NextContinuationToken");
+            boolean more = truncated.getLength() > 0 && Boolean.parseBoolean(truncated.item(0).getTextContent());
+            token = more && next.getLength() > 0 ? next.item(0).getTextContent() : null;
+        } while (token != null);
+        return keys;
+    }
+
+    /**
+     * Sends a SigV4-signed request for {@code key} ("" addresses the bucket itself).
+     */
+    private <T> HttpResponse<T> send(String method, String key, Map<String, String> query, String payloadHash,
+                                     Map<String, String> headers, HttpRequest.BodyPublisher body,
+                                     HttpResponse.BodyHandler<T> handler) throws Exception {
+        URI base = objectUri(key);
+        StringBuilder canonicalQuery = new StringBuilder();
+        for (Map.Entry<String, String> e : new TreeMap<>(query).entrySet()) {
+            if (!canonicalQuery.isEmpty()) canonicalQuery.append('&');
+            canonicalQuery.append(encode(e.getKey())).append('=').append(encode(e.getValue()));
+        }
+        URI uri = URI.create(base + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery));
+
+        String amzDate = ZonedDateTime.now(ZoneOffset.UTC).format(AMZ_DATE);
+        String date = amzDate.substring(0, 8);
+        String host = uri.getHost() + (uri.getPort() != -1 ? ":" + uri.getPort() : "");
+
+        TreeMap<String, String> signed = new TreeMap<>(headers);
+        signed.put("host", host);
+        signed.put("x-amz-content-sha256", payloadHash);
+        signed.put("x-amz-date", amzDate);
+
+        StringBuilder canonicalHeaders = new StringBuilder();
+        signed.forEach((k, v) -> canonicalHeaders.append(k).append(':').append(v.trim()).append('\n'));
+        String signedHeaders = String.join(";", signed.keySet());
+
+        String canonicalRequest = method + "\n" + base.getRawPath() + "\n" + canonicalQuery + "\n"
+                + canonicalHeaders + "\n" + signedHeaders + "\n" + payloadHash;
+        String scope = date + "/" + settings.region() + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n" + sha256Hex(canonicalRequest);
+
+        byte[] signingKey = hmac(("AWS4" + settings.secretKey()).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, settings.region());
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = HashUtil.toHex(hmac(signingKey, stringToSign));
+
+        HttpRequest.Builder req = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(10))
+                .method(method, body)
+                .header("Authorization", "AWS4-HMAC-SHA256 Credential=" + settings.accessKey() + "/" + scope
+                        + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature);
+        // The client sets Host itself
+        signed.forEach((k, v) -> {
+            if (!k.equals("host")) req.header(k, v);
+        });
+        return http.send(req.build(), handler);
+    }
+
+    private URI objectUri(String key) {
+        String path = endpoint.getRawPath() == null ? "" : endpoint.getRawPath();
+        String authority = endpoint.getRawAuthority();
+        if (settings.pathStyle()) {
+            path += "/" + encode(settings.bucket()) + (key.isEmpty() ? "" : "/" + encodePath(key));
+        } else {
+            authority = settings.bucket() + "." + authority;
+            path += "/" + encodePath(key);
+        }
+        return URI.create(endpoint.getScheme() + "://" + authority + path);
+    }
+
+    private static String encodePath(String key) {
+        StringBuilder sb = new StringBuilder();
+        for (String segment : key.split("/", -1)) {
+            if (!sb.isEmpty()) sb.append('/');
+            sb.append(encode(segment));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * RFC 3986 percent-encoding as SigV4 expects it (unreserved characters are left as-is).
+     */
+    private static String encode(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~') {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String sha256Hex(String s) throws Exception {
+        return HashUtil.toHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
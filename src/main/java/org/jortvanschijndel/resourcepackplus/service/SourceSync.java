@@ -0,0 +1,163 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.jortvanschijndel.resourcepackplus.storage.SourceTreeCache;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Incremental source for {@code build.incremental}. Brings a pack's {@link SourceTreeCache} to a new commit
+ * by asking GitHub which files changed since the commit it holds (compare API, or the full tree listing when
+ * the history was rewritten) and downloading only those blobs. The zipball is only downloaded to fill an
+ * empty cache, or when so much changed that fetching blob by blob would be slower.
+ */
+public class SourceSync {
+
+    /**
+     * Beyond this many missing files the zipball is downloaded instead; each blob costs one API call.
+     */
+    private static final int MAX_BLOB_FETCHES = 200;
+
+    private final GitHubService gh;
+    private final String repoSlug;
+    private final SourceTreeCache cache;
+
+    public SourceSync(GitHubService gh, String repoSlug, SourceTreeCache cache) {
+        this.gh = gh;
+        this.repoSlug = repoSlug;
+        this.cache = cache;
+    }
+
+    /**
+     * Makes sure every file of {@code commit} is in the cache and returns its tree. The tree is not saved;
+     * that is up to the caller once the build succeeded.
+     *
+     * @param source repo@branch being built
+     */
+    public SourceTreeCache.Tree sync(String source, String commit, UpdateJob job) throws Exception {
+        SourceTreeCache.Tree last = cache.load();
+        Map<String, String> files = null;
+        if (last != null && last.source().equalsIgnoreCase(source)) {
+            if (last.commit().equals(commit)) {
+                files = last.files();
+            } else {
+                List<GitHubService.FileChange> changes = gh.compareCommits(repoSlug, last.commit(), commit);
+                if (changes != null) {
+                    job.report("<gray>[RPP] " + changes.size() + " file(s) changed since <yellow>" + last.commit().substring(0, 7));
+                    files = applyChanges(last.files(), changes);
+                }
+            }
+        }
+        if (files == null && last != null) {
+            // No usable diff (other branch, force push, huge change): list the tree, cached blobs still count
+            job.report("<gray>[RPP] Listing the repository tree…");
+            files = gh.getTree(repoSlug, commit);
+        }
+
+        if (files != null) {
+            Set<String> missing = new LinkedHashSet<>();
+            for (String sha : files.values()) {
+                if (!cache.has(sha)) missing.add(sha);
+            }
+            if (missing.size() <= MAX_BLOB_FETCHES) {
+                fetch(missing, job);
+                return new SourceTreeCache.Tree(source, commit, files);
+            }
+            job.report("<gray>[RPP] " + missing.size() + " files changed; downloading the whole repository instead.");
+        }
+        return seed(source, commit, job);
+    }
+
+    /**
+     * Maps the pack's entry names to their cached files. The pack root is the shallowest folder holding
+     * pack.mcmeta, the same rule zipball builds use.
+     */
+    public Map<String, File> packFiles(SourceTreeCache.Tree tree) throws IOException {
+        String root = null;
+        int rootDepth = Integer.MAX_VALUE;
+        for (String path : tree.files().keySet()) {
+            if (!(path.equals("pack.mcmeta") || path.endsWith("/pack.mcmeta"))) continue;
+            int depth = (int) path.chars().filter(c -> c == '/').count();
+            if (depth < rootDepth) {
+                root = path.substring(0, path.lastIndexOf('/') + 1);
+                rootDepth = depth;
+            }
+        }
+        if (root == null) {
+            throw new IOException("pack.mcmeta not found in repository!");
+        }
+
+        Map<String, File> entries = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : tree.files().entrySet()) {
+            if (e.getKey().startsWith(root)) {
+                entries.put(e.getKey().substring(root.length()), cache.fileOf(e.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, String> applyChanges(Map<String, String> base, List<GitHubService.FileChange> changes) {
+        Map<String, String> files = new TreeMap<>(base);
+        for (GitHubService.FileChange change : changes) {
+            if (change.previousPath() != null) {
+                files.remove(change.previousPath());
+            }
+            if (change.sha() == null) {
+                files.remove(change.path());
+            } else {
+                files.put(change.path(), change.sha());
+            }
+        }
+        return files;
+    }
+
+    private void fetch(Set<String> missing, UpdateJob job) throws Exception {
+        if (missing.isEmpty()) return;
+        job.report("<gray>[RPP] Downloading " + missing.size() + " changed file(s)…");
+        int done = 0;
+        for (String sha : missing) {
+            job.checkCancelled();
+            cache.put(sha, gh.getBlob(repoSlug, sha));
+            if (++done % 50 == 0) {
+                job.report("<gray>[RPP] Downloaded " + done + "/" + missing.size() + " files…");
+            }
+        }
+    }
+
+    /**
+     * Fills the cache from the zipball of {@code commit}. Blob SHAs are computed locally, so the tree API
+     * is not needed.
+     */
+    private SourceTreeCache.Tree seed(String source, String commit, UpdateJob job) throws Exception {
+        job.report("<gray>[RPP] Downloading repository ZIP from GitHub to fill the local copy…");
+        Map<String, String> files = new TreeMap<>();
+        try (InputStream in = gh.getAuthenticatedStream(gh.getZipballUrl(repoSlug, commit));
+             ZipInputStream zis = new ZipInputStream(new BufferedInputStream(in, 65536))) {
+            String rootFolder = null;
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                String name = entry.getName();
+                // GitHub zipballs have exactly one top-level folder; the first entry tells us which
+                if (rootFolder == null) {
+                    int firstSlash = name.indexOf('/');
+                    rootFolder = firstSlash >= 0 ? name.substring(0, firstSlash + 1) : "";
+                }
+                if (entry.isDirectory() || !name.startsWith(rootFolder) || name.length() == rootFolder.length()) {
+                    continue;
+                }
+                files.put(name.substring(rootFolder.length()), cache.put(zis.readAllBytes()));
+            }
+        }
+        return new SourceTreeCache.Tree(source, commit, files);
+    }
+}
@@ -0,0 +1,57 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.jortvanschijndel.resourcepackplus.util.LatencyWindow;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolling stage timings of the last {@value #CAPACITY} updates that published a pack, for {@code /rpp stats}
+ * and the bStats update charts. Updates that failed, were cancelled or found nothing to build are left out,
+ * so the numbers describe real builds only. Thread-safe.
+ */
+public class UpdateHistory {
+
+    private static final int CAPACITY = 20;
+
+    private final Map<String, LatencyWindow> stages = new LinkedHashMap<>();
+    private final LatencyWindow total = new LatencyWindow(CAPACITY);
+    private UpdateJob last;
+
+    /**
+     * Adds a finished job. Only jobs that got as far as publishing count.
+     */
+    public synchronized void record(UpdateJob job) {
+        List<UpdateStage.Result> results = job.getStages();
+        if (job.getState() != UpdateJob.State.DONE || results.stream().noneMatch(r -> r.name().equals("publish"))) {
+            return;
+        }
+        for (UpdateStage.Result r : results) {
+            stages.computeIfAbsent(r.name(), k -> new LatencyWindow(CAPACITY)).add(r.millis());
+        }
+        total.add(job.getFinishedAt() - job.getStartedAt());
+        last = job;
+    }
+
+    /**
+     * Duration windows per stage, in the order the stages first ran.
+     */
+    public synchronized Map<String, LatencyWindow> getStages() {
+        return new LinkedHashMap<>(stages);
+    }
+
+    /**
+     * Wall time of whole updates, including waits between stages.
+     */
+    public LatencyWindow getTotal() {
+        return total;
+    }
+
+    /**
+     * The most recent recorded update, or null when there is none yet.
+     */
+    public synchronized UpdateJob getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,200 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.bukkit.command.CommandSender;
+import org.jortvanschijndel.resourcepackplus.util.Messaging;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One {@code /rpp update} run in the {@link UpdateJobQueue}. Progress messages go to everyone who asked for
+ * the same build, and the last one is kept for {@code /rpp jobs}. Each job builds in its own workspace folder
+ * (the finished pack moves to the pack's upload folder) and records how long each of its steps took ({@link #stage}).
+ */
+public class UpdateJob {
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    private final int id;
+    private final String url;
+    private final String branch;
+    private final String pack;
+    private final File workspace;
+    private final File uploadDir;
+    private final CommandSender requester;
+    private final List<CommandSender> watchers = new CopyOnWriteArrayList<>();
+    private final List<UpdateStage.Result> stages = new CopyOnWriteArrayList<>();
+    private final long submittedAt = System.currentTimeMillis();
+
+    private volatile boolean force;
+    private volatile State state = State.QUEUED;
+    private volatile String lastMessage = "<gray>Waiting…";
+    private volatile boolean cancelRequested;
+    private volatile boolean failed;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
+    public UpdateJob(int id, String url, String branch, String pack, boolean force, File workspace, File uploadDir,
+                     CommandSender requester) {
+        this.id = id;
+        this.url = url;
+        this.branch = branch;
+        this.pack = pack;
+        this.force = force;
+        this.workspace = workspace;
+        this.uploadDir = uploadDir;
+        this.requester = requester;
+        this.watchers.add(requester);
+    }
+
+    /**
+     * Identifies builds that produce the same pack; such requests share one job.
+     */
+    public static String keyOf(String url, String branch, String pack) {
+        String repo = url.trim().toLowerCase(Locale.ROOT).replaceAll("(\\.git)?/*$", "");
+        return repo + "#" + branch.toLowerCase(Locale.ROOT) + "#" + pack;
+    }
+
+    public String getKey() {
+        return keyOf(url, branch, pack);
+    }
+
+    /**
+     * Sends a MiniMessage progress line to everyone following this job.
+     */
+    public void report(String message) {
+        lastMessage = message;
+        for (CommandSender watcher : watchers) {
+            Messaging.sendMini(watcher, message);
+        }
+    }
+
+    /**
+     * Reports why the job stopped and marks it failed.
+     */
+    public void fail(String message) {
+        failed = true;
+        report(message);
+    }
+
+    /**
+     * Stops the job at this point when a cancel was requested. Called between build steps.
+     */
+    public void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancellationException("Update #" + id + " was cancelled");
+        }
+    }
+
+    /**
+     * Starts timing a build step; close the returned stage when the step is done.
+     */
+    public UpdateStage stage(String name) {
+        return new UpdateStage(this, name);
+    }
+
+    void addStage(UpdateStage.Result result) {
+        stages.add(result);
+    }
+
+    void addWatcher(CommandSender sender) {
+        if (!watchers.contains(sender)) watchers.add(sender);
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    void setForce(boolean force) {
+        this.force = force;
+    }
+
+    void setState(State state) {
+        this.state = state;
+        if (state == State.RUNNING) {
+            startedAt = System.currentTimeMillis();
+        } else if (state != State.QUEUED) {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    public String getPack() {
+        return pack;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+
+    /**
+     * Folder this job may write to; created when the job starts and deleted when it ends.
+     */
+    public File getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * Folder the built pack waits in until it is published, together with the progress of its upload.
+     * Shared by every job of this pack and kept when a job fails, so an interrupted upload can resume.
+     */
+    public File getUploadDir() {
+        return uploadDir;
+    }
+
+    /**
+     * Whoever submitted the job first.
+     */
+    public CommandSender getRequester() {
+        return requester;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Timed steps so far, in the order they finished.
+     */
+    public List<UpdateStage.Result> getStages() {
+        return List.copyOf(stages);
+    }
+
+    public String getLastMessage() {
+        return lastMessage;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+}
@@ -0,0 +1,200 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import org.apache.commons.io.FileUtils;
+import org.bukkit.command.CommandSender;
+import org.jortvanschijndel.resourcepackplus.util.Messaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@code /rpp update} builds one at a time from a bounded queue, so two admins updating at once never
+ * race each other on the same pack host folder. A request for a repo, branch and pack that is already queued
+ * joins that job instead of adding a second build. A job that is already running has resolved its commit, so
+ * a request arriving then queues one follow-up build, which later requests join in turn. Jobs can be listed
+ * and cancelled; a running job stops at its next step, before the live pack is switched.
+ */
+public class UpdateJobQueue {
+
+    /**
+     * The build itself. Throwing marks the job failed.
+     */
+    public interface Runner {
+        void run(UpdateJob job) throws Exception;
+    }
+
+    private static final int HISTORY = 10;
+
+    private final File workRoot;
+    private final Runner runner;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<Integer, UpdateJob> active = new LinkedHashMap<>();
+    private final Map<UpdateJob, Runnable> queued = new LinkedHashMap<>();
+    private final Deque<UpdateJob> finished = new ArrayDeque<>();
+    private final UpdateHistory history = new UpdateHistory();
+    private int nextId = 1;
+
+    /**
+     * @param workRoot  folder job workspaces and the per-pack upload folders are created in
+     * @param maxQueued jobs that may wait behind the running one; further requests are refused
+     */
+    public UpdateJobQueue(File workRoot, int maxQueued, Runner runner) {
+        this.workRoot = workRoot;
+        this.runner = runner;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueued)), r -> {
+                    Thread t = new Thread(r, "RPP-Update");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Queues a build, or joins the sender to an identical one that is still queued. An identical job that is
+     * already running does not count, since it may be building an older commit.
+     *
+     * @return the job that will build the pack
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public synchronized UpdateJob submit(String url, String branch, String pack, boolean force, CommandSender sender) {
+        String key = UpdateJob.keyOf(url, branch, pack);
+        UpdateJob running = null;
+        for (UpdateJob existing : active.values()) {
+            if (!existing.getKey().equals(key) || existing.isCancelRequested()) continue;
+            if (existing.getState() == UpdateJob.State.RUNNING) {
+                running = existing;
+                continue;
+            }
+            existing.addWatcher(sender);
+            if (force) {
+                existing.setForce(true);
+            }
+            Messaging.sendMini(sender, "<gray>[RPP] Same update is already queued as job <yellow>#" + existing.getId()
+                    + "<gray>; you'll get its progress.");
+            return existing;
+        }
+
+        int id = nextId;
+        UpdateJob job = new UpdateJob(id, url, branch, pack, force, new File(workRoot, "job-" + id),
+                new File(workRoot, "uploads" + File.separator + pack), sender);
+        Runnable task = () -> run(job);
+        executor.execute(task);
+        nextId++;
+        if (running != null) {
+            Messaging.sendMini(sender, "<gray>[RPP] Update <yellow>#" + running.getId() + "<gray> is already building this pack; update <yellow>#"
+                    + id + "<gray> will build it again afterwards with the latest commit.");
+        } else {
+            Messaging.sendMini(sender, active.isEmpty()
+                    ? "<gray>[RPP] Starting update <yellow>#" + id + "<gray>…"
+                    : "<gray>[RPP] Update <yellow>#" + id + "<gray> queued behind " + active.size() + " other update(s).");
+        }
+        active.put(id, job);
+        queued.put(job, task);
+        return job;
+    }
+
+    /**
+     * Cancels a job by id. Returns false when no queued or running job has that id.
+     */
+    public synchronized boolean cancel(int id) {
+        for (UpdateJob job : active.values()) {
+            if (job.getId() != id) continue;
+            job.requestCancel();
+            Runnable task = queued.remove(job);
+            if (task != null && executor.remove(task)) {
+                finish(job, UpdateJob.State.CANCELLED);
+                job.report("<yellow>[RPP] Update #" + id + " was cancelled before it started.");
+            } else {
+                job.report("<yellow>[RPP] Cancelling update #" + id + " at the next step…");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Running and queued jobs first, then recently finished ones, newest first.
+     */
+    public synchronized List<UpdateJob> getJobs() {
+        List<UpdateJob> jobs = new ArrayList<>(active.values());
+        jobs.addAll(finished);
+        return jobs;
+    }
+
+    /**
+     * Stage timings of recent builds.
+     */
+    public UpdateHistory getHistory() {
+        return history;
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            active.values().forEach(UpdateJob::requestCancel);
+        }
+        executor.shutdownNow();
+    }
+
+    private void run(UpdateJob job) {
+        synchronized (this) {
+            queued.remove(job);
+            if (job.isCancelRequested()) {
+                finish(job, UpdateJob.State.CANCELLED);
+                return;
+            }
+            job.setState(UpdateJob.State.RUNNING);
+        }
+
+        UpdateJob.State result;
+        try {
+            prepareWorkspace(job.getWorkspace());
+            runner.run(job);
+            result = job.isFailed() ? UpdateJob.State.FAILED : UpdateJob.State.DONE;
+        } catch (CancellationException e) {
+            job.report("<yellow>[RPP] Update #" + job.getId() + " cancelled.");
+            result = UpdateJob.State.CANCELLED;
+        } catch (Exception e) {
+            job.report("<red>[RPP] Update failed: " + e.getMessage());
+            e.printStackTrace();
+            result = UpdateJob.State.FAILED;
+        } finally {
+            FileUtils.deleteQuietly(job.getWorkspace());
+        }
+
+        synchronized (this) {
+            finish(job, result);
+        }
+    }
+
+    private void finish(UpdateJob job, UpdateJob.State state) {
+        job.setState(state);
+        active.remove(job.getId());
+        finished.addFirst(job);
+        while (finished.size() > HISTORY) {
+            finished.removeLast();
+        }
+        history.record(job);
+    }
+
+    private static void prepareWorkspace(File workspace) throws IOException {
+        // A folder left behind by a crash may carry this job's id; start clean
+        if (workspace.exists()) {
+            FileUtils.deleteDirectory(workspace);
+        }
+        if (!workspace.mkdirs()) {
+            throw new IOException("Failed to create working directory: " + workspace.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+/**
+ * Times one step of an update and records how much it processed. Opened with {@link UpdateJob#stage} in a
+ * try-with-resources block; closing it adds the result to the job and commits an {@link UpdateStageEvent}.
+ * A stage that ends with an exception is still recorded, up to where it stopped.
+ */
+public final class UpdateStage implements AutoCloseable {
+
+    /**
+     * @param bytes   bytes the stage read or wrote, 0 when not measured
+     * @param entries files the stage processed, 0 when not measured
+     */
+    public record Result(String name, long millis, long bytes, int entries) {
+        /**
+         * Throughput in bytes per second, or -1 when no bytes were measured.
+         */
+        public long bytesPerSecond() {
+            return bytes > 0 ? bytes * 1000 / Math.max(1, millis) : -1;
+        }
+    }
+
+    private final UpdateJob job;
+    private final String name;
+    private final long startNanos = System.nanoTime();
+    private final UpdateStageEvent event = new UpdateStageEvent();
+    private long bytes;
+    private int entries;
+    private boolean closed;
+
+    UpdateStage(UpdateJob job, String name) {
+        this.job = job;
+        this.name = name;
+        event.begin();
+    }
+
+    public UpdateStage bytes(long bytes) {
+        this.bytes = bytes;
+        return this;
+    }
+
+    public UpdateStage entries(int entries) {
+        this.entries = entries;
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        long millis = (System.nanoTime() - startNanos) / 1_000_000;
+        event.end();
+        if (event.shouldCommit()) {
+            event.job = job.getId();
+            event.pack = job.getPack();
+            event.stage = name;
+            event.bytes = bytes;
+            event.entries = entries;
+            event.commit();
+        }
+        job.addStage(new Result(name, millis, bytes, entries));
+    }
+}
@@ -0,0 +1,37 @@
+package org.jortvanschijndel.resourcepackplus.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one stage of an update, committed by {@link UpdateStage}. Shows up in any flight recording
+ * of the server (e.g. {@code jcmd <pid> JFR.start}), next to GC and I/O events of the same time span.
+ */
+@Name("org.jortvanschijndel.resourcepackplus.UpdateStage")
+@Label("Pack Update Stage")
+@Category({"ResourcepackPlus", "Update"})
+@Description("One step of a /rpp update run, with the bytes and entries it processed")
+@StackTrace(false)
+class UpdateStageEvent extends Event {
+
+    @Label("Job")
+    int job;
+
+    @Label("Pack")
+    String pack;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Entries")
+    int entries;
+}
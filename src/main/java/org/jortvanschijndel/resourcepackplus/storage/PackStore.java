@@ -1,18 +1,24 @@
 package org.jortvanschijndel.resourcepackplus.storage;
 
 import org.bukkit.Bukkit;
+import org.jortvanschijndel.resourcepackplus.util.PackSnapshot;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.nio.file.Files;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
- * Lightweight storage for resource pack settings (URL + SHA1).
+ * Lightweight storage for resource pack settings (URL + SHA1), plus the repo/branch and commit
+ * each pack was built from so unchanged branches can be skipped. The default pack uses the
+ * {@code resourcepack.*} keys; named packs are stored under {@code pack.<name>.*}.
  * Uses properties file (resourcepack.properties) with restricted FS permissions (POSIX where supported).
  * NOTE: On Windows, POSIX permissions are not available; advise server admins to protect filesystem access.
  */
@@ -48,37 +54,88 @@ public class PackStore {
         }
     }
 
-    // Getters
+    // Default pack
     public String getUrl() {
-        return props.getProperty("resourcepack.url");
+        return getUrl(PackSnapshot.DEFAULT);
     }
 
     public String getSha1() {
-        return props.getProperty("resourcepack.sha1");
+        return getSha1(PackSnapshot.DEFAULT);
     }
 
     public boolean hasUrlAndSha1() {
-        return getUrl() != null && !getUrl().isBlank()
-                && getSha1() != null && !getSha1().isBlank();
+        return hasUrlAndSha1(PackSnapshot.DEFAULT);
     }
 
-    // Setters
-    public void setUrl(String url) {
-        props.setProperty("resourcepack.url", url);
+    public synchronized void setUrl(String url) {
+        props.setProperty(key(PackSnapshot.DEFAULT, "url"), url);
         save();
     }
 
-    public void setSha1(String sha1) {
-        props.setProperty("resourcepack.sha1", sha1);
+    public synchronized void setSha1(String sha1) {
+        props.setProperty(key(PackSnapshot.DEFAULT, "sha1"), sha1);
         save();
     }
 
-    public void setUrlAndSha1(String url, String sha1) {
-        props.setProperty("resourcepack.url", url);
-        props.setProperty("resourcepack.sha1", sha1);
+    public synchronized void setUrlAndSha1(String url, String sha1) {
+        props.setProperty(key(PackSnapshot.DEFAULT, "url"), url);
+        props.setProperty(key(PackSnapshot.DEFAULT, "sha1"), sha1);
         save();
     }
 
+    // Named packs
+    public String getUrl(String pack) {
+        return props.getProperty(key(pack, "url"));
+    }
+
+    public String getSha1(String pack) {
+        return props.getProperty(key(pack, "sha1"));
+    }
+
+    public String getSource(String pack) {
+        return props.getProperty(key(pack, "source"));
+    }
+
+    public String getCommit(String pack) {
+        return props.getProperty(key(pack, "commit"));
+    }
+
+    public boolean hasUrlAndSha1(String pack) {
+        String url = getUrl(pack);
+        String sha1 = getSha1(pack);
+        return url != null && !url.isBlank() && sha1 != null && !sha1.isBlank();
+    }
+
+    public synchronized void setPack(String pack, String url, String sha1, String source, String commit) {
+        props.setProperty(key(pack, "url"), url);
+        props.setProperty(key(pack, "sha1"), sha1);
+        props.setProperty(key(pack, "source"), source);
+        props.setProperty(key(pack, "commit"), commit);
+        save();
+    }
+
+    /**
+     * Names of all stored packs, the default pack first and the others sorted.
+     */
+    public synchronized List<String> getPackNames() {
+        Set<String> named = new TreeSet<>();
+        for (String k : props.stringPropertyNames()) {
+            if (k.startsWith("pack.") && k.endsWith(".url")) {
+                named.add(k.substring("pack.".length(), k.length() - ".url".length()));
+            }
+        }
+        List<String> names = new ArrayList<>();
+        if (hasUrlAndSha1()) names.add(PackSnapshot.DEFAULT);
+        for (String name : named) {
+            if (hasUrlAndSha1(name)) names.add(name);
+        }
+        return names;
+    }
+
+    private static String key(String pack, String field) {
+        return PackSnapshot.DEFAULT.equals(pack) ? "resourcepack." + field : "pack." + pack + "." + field;
+    }
+
     private synchronized void save() {
         try (FileWriter fw = new FileWriter(file)) {
             props.store(fw, "ResourcepackPlus resourcepack settings");
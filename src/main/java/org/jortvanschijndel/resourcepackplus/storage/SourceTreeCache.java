@@ -0,0 +1,152 @@
+package org.jortvanschijndel.resourcepackplus.storage;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jortvanschijndel.resourcepackplus.util.HashUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Local copy of the source tree a pack was last built from, so the next build only has to fetch the files
+ * that changed. File contents are stored once under their git blob SHA in {@code objects/}, which GitHub's
+ * tree and compare APIs report for every path, so unchanged files are recognised without downloading them.
+ * {@code tree.json} maps each path of the last built commit to its blob.
+ */
+public class SourceTreeCache {
+
+    /**
+     * @param source repo@branch the tree came from
+     * @param commit commit the tree belongs to
+     * @param files  path to git blob SHA, sorted by path
+     */
+    public record Tree(String source, String commit, Map<String, String> files) {}
+
+    private final File objects;
+    private final File manifest;
+
+    /**
+     * @param folder folder holding this pack's cache, created when needed
+     */
+    public SourceTreeCache(File folder) {
+        this.objects = new File(folder, "objects");
+        this.manifest = new File(folder, "tree.json");
+    }
+
+    /**
+     * The last saved tree, or null when there is none or it can't be read.
+     */
+    public Tree load() {
+        if (!manifest.exists()) return null;
+        try {
+            JsonObject json = JsonParser.parseString(Files.readString(manifest.toPath())).getAsJsonObject();
+            Map<String, String> files = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> e : json.getAsJsonObject("files").entrySet()) {
+                files.put(e.getKey(), e.getValue().getAsString());
+            }
+            return new Tree(json.get("source").getAsString(), json.get("commit").getAsString(), files);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records the tree of a finished build. Written to a temp file first, so a crash never leaves half a manifest.
+     */
+    public void save(Tree tree) throws IOException {
+        JsonObject files = new JsonObject();
+        tree.files().forEach(files::addProperty);
+        JsonObject json = new JsonObject();
+        json.addProperty("source", tree.source());
+        json.addProperty("commit", tree.commit());
+        json.add("files", files);
+
+        manifest.getParentFile().mkdirs();
+        File temp = new File(manifest.getParentFile(), "tree.json.tmp");
+        Files.writeString(temp.toPath(), json.toString(), StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public boolean has(String sha) {
+        return fileOf(sha).exists();
+    }
+
+    /**
+     * Where the content of a blob is stored.
+     */
+    public File fileOf(String sha) {
+        return new File(objects, sha.substring(0, 2) + File.separator + sha.substring(2));
+    }
+
+    /**
+     * Stores content under its blob SHA and returns the SHA.
+     */
+    public String put(byte[] data) throws IOException {
+        String sha = blobSha(data);
+        File file = fileOf(sha);
+        if (!file.exists()) {
+            file.getParentFile().mkdirs();
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            Files.write(temp.toPath(), data);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return sha;
+    }
+
+    /**
+     * Stores downloaded content that should have the given blob SHA, and refuses it when it doesn't.
+     */
+    public void put(String sha, byte[] data) throws IOException {
+        String actual = blobSha(data);
+        if (!actual.equals(sha)) {
+            throw new IOException("Downloaded blob " + sha + " has different content (" + actual + ")");
+        }
+        put(data);
+    }
+
+    /**
+     * Deletes stored blobs the given trees don't use. Returns how many were deleted.
+     */
+    public int prune(Collection<String> keep) {
+        Set<String> used = new HashSet<>(keep);
+        int deleted = 0;
+        File[] buckets = objects.listFiles(File::isDirectory);
+        if (buckets == null) return 0;
+        for (File bucket : buckets) {
+            File[] files = bucket.listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                if (!used.contains(bucket.getName() + file.getName()) && file.delete()) {
+                    deleted++;
+                }
+            }
+            bucket.delete(); // only succeeds when empty
+        }
+        return deleted;
+    }
+
+    /**
+     * Git's object id for file content: SHA-1 over {@code "blob <length>\0"} followed by the bytes.
+     */
+    public static String blobSha(byte[] data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(("blob " + data.length + "\0").getBytes(StandardCharsets.US_ASCII));
+            digest.update(data);
+            return HashUtil.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
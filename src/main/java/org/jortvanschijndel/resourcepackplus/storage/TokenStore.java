@@ -58,6 +58,10 @@ public class TokenStore {
                 && getDropboxAppSecret() != null && !getDropboxAppSecret().isBlank()
                 && getDropboxRefreshToken() != null && !getDropboxRefreshToken().isBlank();
     }
+    public boolean hasS3Credentials() {
+        return getS3AccessKey() != null && !getS3AccessKey().isBlank()
+                && getS3SecretKey() != null && !getS3SecretKey().isBlank();
+    }
 
 
     public String getGithubToken() {
@@ -76,6 +80,14 @@ public class TokenStore {
         return props.getProperty("dropbox.refreshToken");
     }
 
+    public String getS3AccessKey() {
+        return props.getProperty("s3.accessKey");
+    }
+
+    public String getS3SecretKey() {
+        return props.getProperty("s3.secretKey");
+    }
+
     public void setGithubToken(String token) {
         props.setProperty("githubToken", token);
         save();
@@ -87,6 +99,12 @@ public class TokenStore {
         save();
     }
 
+    public void setS3Credentials(String accessKey, String secretKey) {
+        props.setProperty("s3.accessKey", accessKey);
+        props.setProperty("s3.secretKey", secretKey);
+        save();
+    }
+
     private synchronized void save() {
         try (FileWriter fw = new FileWriter(file)) {
             props.store(fw, "ResourcepackPlus tokens");
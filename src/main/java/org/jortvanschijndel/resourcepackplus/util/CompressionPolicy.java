@@ -0,0 +1,66 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Chooses the compression for each pack entry by file extension.
+ * Level 0 stores the entry as-is (STORED), 1-9 are DEFLATE levels.
+ * Already-compressed assets like PNG and OGG gain almost nothing from DEFLATE, so storing them
+ * saves build time and client unpack time.
+ */
+public class CompressionPolicy {
+
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(6, Map.of());
+
+    private final int defaultLevel;
+    private final Map<String, Integer> levels;
+
+    public CompressionPolicy(int defaultLevel, Map<String, Integer> levels) {
+        this.defaultLevel = clamp(defaultLevel);
+        this.levels = levels;
+    }
+
+    /**
+     * Reads the {@code build.compression} section. The "max" profile deflates every entry at level 9
+     * for release builds; any other profile uses the default level and the per-extension rules.
+     */
+    public static CompressionPolicy fromConfig(ConfigurationSection section) {
+        if (section == null) return DEFAULT;
+
+        if (section.getString("profile", "balanced").equalsIgnoreCase("max")) {
+            return new CompressionPolicy(Deflater.BEST_COMPRESSION, Map.of());
+        }
+
+        Map<String, Integer> levels = new HashMap<>();
+        ConfigurationSection rules = section.getConfigurationSection("rules");
+        if (rules != null) {
+            for (String ext : rules.getKeys(false)) {
+                String value = rules.getString(ext, "");
+                int level = value.equalsIgnoreCase("stored") ? 0 : rules.getInt(ext, -1);
+                if (level >= 0) {
+                    levels.put(ext.toLowerCase(Locale.ROOT).replaceFirst("^\\.", ""), clamp(level));
+                }
+            }
+        }
+        return new CompressionPolicy(section.getInt("defaultLevel", 6), levels);
+    }
+
+    /**
+     * Compression level for the given entry name.
+     */
+    public int levelFor(String entryName) {
+        int dot = entryName.lastIndexOf('.');
+        if (dot < 0 || dot < entryName.lastIndexOf('/')) return defaultLevel;
+        Integer level = levels.get(entryName.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return level != null ? level : defaultLevel;
+    }
+
+    private static int clamp(int level) {
+        return Math.max(0, Math.min(9, level));
+    }
+}
@@ -0,0 +1,78 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes Dropbox's {@code content_hash}: the SHA-256 of the concatenated SHA-256 digests of
+ * every 4 MiB block of the file. Being a {@link MessageDigest}, it can be fed from a
+ * {@link java.security.DigestOutputStream} while a pack is written.
+ */
+public final class DropboxContentHasher extends MessageDigest {
+
+    public static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private final MessageDigest overallHasher = newSha256();
+    private final MessageDigest blockHasher = newSha256();
+    private int blockPos = 0;
+
+    public DropboxContentHasher() {
+        super("Dropbox-Content-Hash");
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return overallHasher.getDigestLength();
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        if (blockPos == BLOCK_SIZE) {
+            finishBlock();
+        }
+        blockHasher.update(input);
+        blockPos++;
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        while (len > 0) {
+            if (blockPos == BLOCK_SIZE) {
+                finishBlock();
+            }
+            int part = Math.min(len, BLOCK_SIZE - blockPos);
+            blockHasher.update(input, offset, part);
+            blockPos += part;
+            offset += part;
+            len -= part;
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        if (blockPos > 0) {
+            finishBlock();
+        }
+        return overallHasher.digest();
+    }
+
+    @Override
+    protected void engineReset() {
+        blockHasher.reset();
+        overallHasher.reset();
+        blockPos = 0;
+    }
+
+    private void finishBlock() {
+        overallHasher.update(blockHasher.digest());
+        blockPos = 0;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package org.jortvanschijndel.resourcepackplus.util;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 
 /**
@@ -10,20 +12,32 @@ import java.security.MessageDigest;
 public final class HashUtil {
     private HashUtil() {}
 
+    /**
+     * Large reads keep syscalls and per-call digest overhead low; 8 KB reads spent more time in read() than hashing.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
     public static String sha1OfFile(File file) throws Exception {
-        MessageDigest digest = MessageDigest.getInstance("SHA-1");
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] buf = new byte[8192];
-            int r;
-            while ((r = fis.read(buf)) != -1) {
-                digest.update(buf, 0, r);
+        return MultiDigest.of().updateFromFile(file).hex(MultiDigest.Kind.SHA1);
+    }
+
+    /**
+     * Feeds the file to every given digest in a single read.
+     */
+    public static void updateFromFile(File file, MessageDigest... digests) throws Exception {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // A heap buffer: digests copy direct or mapped buffers through a small temp array, per digest
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buf) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buf.array(), 0, buf.position());
+                }
+                buf.clear();
             }
         }
-        byte[] sha1 = digest.digest();
-        return toHex(sha1);
     }
 
-    private static String toHex(byte[] arr) {
+    public static String toHex(byte[] arr) {
         StringBuilder sb = new StringBuilder(arr.length * 2);
         for (byte b : arr) {
             sb.append(Character.forDigit((b >> 4) & 0xF, 16));
@@ -0,0 +1,68 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent {@code capacity} latency samples in a ring buffer and answers percentile queries
+ * over them. Memory stays fixed no matter how many samples are recorded. Thread-safe.
+ */
+public class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long total;
+
+    public LatencyWindow(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+    }
+
+    public synchronized void add(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) size++;
+        total++;
+    }
+
+    /**
+     * Samples currently in the window.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Samples recorded since startup, including those that dropped out of the window.
+     */
+    public synchronized long total() {
+        return total;
+    }
+
+    /**
+     * Nearest-rank percentile ({@code 0 < p <= 100}) of the samples in the window, or -1 when empty.
+     */
+    public long percentile(double p) {
+        return percentiles(p)[0];
+    }
+
+    /**
+     * Several percentiles from one sorted copy of the window; -1 for each when empty.
+     */
+    public long[] percentiles(double... ps) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, size);
+        }
+        long[] result = new long[ps.length];
+        if (sorted.length == 0) {
+            Arrays.fill(result, -1);
+            return result;
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < ps.length; i++) {
+            int rank = (int) Math.ceil(ps[i] / 100.0 * sorted.length);
+            result[i] = sorted[Math.min(sorted.length, Math.max(1, rank)) - 1];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Computes every digest a pack needs from one pass over its bytes: the SHA-1 clients verify, and on request
+ * SHA-256 (S3 payload signing) and Dropbox's content hash. Either tee it onto the stream the pack is written
+ * through ({@link #tee}), so hashing costs no extra read at all, or feed it a finished file
+ * ({@link #updateFromFile}), which reads the file once no matter how many digests are wanted.
+ * SHA-1 is always included, as it names the pack.
+ */
+public final class MultiDigest {
+
+    public enum Kind { SHA1, SHA256, DROPBOX }
+
+    private final Map<Kind, MessageDigest> digests = new EnumMap<>(Kind.class);
+    private final Map<Kind, String> results = new EnumMap<>(Kind.class);
+
+    private MultiDigest() {}
+
+    public static MultiDigest of(Kind... kinds) {
+        MultiDigest multi = new MultiDigest();
+        multi.digests.put(Kind.SHA1, newDigest("SHA-1"));
+        for (Kind kind : kinds) {
+            multi.digests.computeIfAbsent(kind, k -> switch (k) {
+                case SHA1 -> newDigest("SHA-1");
+                case SHA256 -> newDigest("SHA-256");
+                case DROPBOX -> new DropboxContentHasher();
+            });
+        }
+        return multi;
+    }
+
+    public boolean has(Kind kind) {
+        return digests.containsKey(kind);
+    }
+
+    public void update(byte[] b, int off, int len) {
+        if (!results.isEmpty()) {
+            throw new IllegalStateException("Digests were already read");
+        }
+        for (MessageDigest digest : digests.values()) {
+            digest.update(b, off, len);
+        }
+    }
+
+    /**
+     * Reads the file once and feeds every digest from the same buffer.
+     */
+    public MultiDigest updateFromFile(File file) throws Exception {
+        if (!results.isEmpty()) {
+            throw new IllegalStateException("Digests were already read");
+        }
+        HashUtil.updateFromFile(file, digests.values().toArray(MessageDigest[]::new));
+        return this;
+    }
+
+    /**
+     * Wraps {@code out} so every byte written is also hashed. One layer for all digests, instead of a
+     * {@link java.security.DigestOutputStream} per digest.
+     */
+    public OutputStream tee(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                update(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                update(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Hex result of one digest, or {@code null} when it was not requested. Reading any result ends the input.
+     */
+    public String hex(Kind kind) {
+        MessageDigest digest = digests.get(kind);
+        if (digest == null) return null;
+        return results.computeIfAbsent(kind, k -> HashUtil.toHex(digest.digest()));
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Random-access view of a ZIP archive built from its central directory.
+ * Opening the index reads only the end record and the central directory, so names, sizes and CRCs
+ * are available without touching any file data, and a single entry can be read without scanning
+ * the ones before it. Entry data is read with positional reads, so several entries may be open at once.
+ * ZIP64 archives (65535 entries or more, or past 4 GB) are read through their ZIP64 end record and extra fields.
+ */
+public class PackArchiveIndex implements Closeable {
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_OF_CENTRAL_SIG = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int FLAG_UTF8 = 0x0800;
+    /**
+     * Names without the UTF-8 flag are in the original IBM PC code page, as the ZIP format specifies.
+     */
+    private static final Charset LEGACY_NAMES = Charset.forName("IBM437");
+
+    private final FileChannel channel;
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName;
+
+    /**
+     * One central directory record.
+     *
+     * @param method ZIP compression method (0 = STORED, 8 = DEFLATED)
+     * @param dosTime DOS date/time as stored in the archive
+     */
+    public record Entry(String name, int method, long dosTime, long crc, long compressedSize, long size,
+                        long localHeaderOffset) {
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    public PackArchiveIndex(File zipFile) throws IOException {
+        this.channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ);
+        try {
+            this.entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.byName = new HashMap<>(entries.size() * 2);
+        for (Entry entry : entries) {
+            byName.putIfAbsent(entry.name(), entry);
+        }
+    }
+
+    /**
+     * All entries in central directory order.
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Looks up an entry by its full name, or {@code null} if the archive has no such entry.
+     */
+    public Entry getEntry(String name) {
+        return byName.get(name);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Folder prefix (with trailing slash, or empty) of the shallowest pack.mcmeta in the archive,
+     * or {@code null} when there is none.
+     */
+    public String findPackRoot() {
+        String root = null;
+        int rootDepth = Integer.MAX_VALUE;
+        for (Entry entry : entries) {
+            String name = entry.name();
+            if (entry.isDirectory() || !(name.equals("pack.mcmeta") || name.endsWith("/pack.mcmeta"))) continue;
+            int depth = (int) name.chars().filter(c -> c == '/').count();
+            if (depth < rootDepth) {
+                root = name.substring(0, name.lastIndexOf('/') + 1);
+                rootDepth = depth;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Opens the entry's data exactly as stored in the archive (still compressed for DEFLATED entries).
+     */
+    public InputStream openRaw(Entry entry) throws IOException {
+        return new RangeInputStream(channel, dataOffset(entry), entry.compressedSize(), false);
+    }
+
+    /**
+     * Opens the entry's uncompressed data.
+     */
+    public InputStream openStream(Entry entry) throws IOException {
+        return switch (entry.method()) {
+            case 0 -> openRaw(entry);
+            case 8 -> {
+                // nowrap inflaters want one dummy byte after the compressed data
+                long offset = dataOffset(entry);
+                Inflater inflater = new Inflater(true);
+                yield new InflaterInputStream(new RangeInputStream(channel, offset, entry.compressedSize(), true),
+                        inflater, 65536) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inflater.end();
+                    }
+                };
+            }
+            default -> throw new IOException("Unsupported compression method " + entry.method() + " for " + entry.name());
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, 22 + 0xFFFF);
+        ByteBuffer tail = readFully(fileSize - tailSize, tailSize);
+
+        int eocd = -1;
+        for (int i = tailSize - 22; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_SIG) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("Not a ZIP file: end of central directory not found");
+        }
+
+        long count = Short.toUnsignedInt(tail.getShort(eocd + 10));
+        long cdSize = Integer.toUnsignedLong(tail.getInt(eocd + 12));
+        long cdOffset = Integer.toUnsignedLong(tail.getInt(eocd + 16));
+
+        // A ZIP64 locator right before the end record points at the ZIP64 end record with the real values
+        long eocdPosition = fileSize - tailSize + eocd;
+        if (eocdPosition >= 20) {
+            ByteBuffer locator = readFully(eocdPosition - 20, 20);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIG) {
+                ByteBuffer zip64End = readFully(locator.getLong(8), 56);
+                if (zip64End.getInt(0) != ZIP64_END_OF_CENTRAL_SIG) {
+                    throw new IOException("Corrupt ZIP64 end of central directory");
+                }
+                count = zip64End.getLong(32);
+                cdSize = zip64End.getLong(40);
+                cdOffset = zip64End.getLong(48);
+            }
+        }
+        if (cdSize > Integer.MAX_VALUE || count > cdSize / 46) {
+            throw new IOException("Central directory too large or corrupt (" + count + " entries, " + cdSize + " bytes)");
+        }
+
+        ByteBuffer cd = readFully(cdOffset, (int) cdSize);
+        List<Entry> result = new ArrayList<>((int) count);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (cd.getInt(pos) != CENTRAL_HEADER_SIG) {
+                throw new IOException("Corrupt central directory at entry " + i);
+            }
+            int flags = Short.toUnsignedInt(cd.getShort(pos + 8));
+            if ((flags & 1) != 0) {
+                throw new IOException("Encrypted ZIP entries are not supported");
+            }
+            int method = Short.toUnsignedInt(cd.getShort(pos + 10));
+            long dosTime = Integer.toUnsignedLong(cd.getInt(pos + 12));
+            long crc = Integer.toUnsignedLong(cd.getInt(pos + 16));
+            long compressedSize = Integer.toUnsignedLong(cd.getInt(pos + 20));
+            long size = Integer.toUnsignedLong(cd.getInt(pos + 24));
+            int nameLen = Short.toUnsignedInt(cd.getShort(pos + 28));
+            int extraLen = Short.toUnsignedInt(cd.getShort(pos + 30));
+            int commentLen = Short.toUnsignedInt(cd.getShort(pos + 32));
+            long localOffset = Integer.toUnsignedLong(cd.getInt(pos + 42));
+
+            // Values that do not fit are 0xFFFFFFFF here and follow in the ZIP64 extra, in this order
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localOffset == ZIP64_MAGIC) {
+                int extra = findExtra(cd, pos + 46 + nameLen, extraLen, ZIP64_EXTRA_ID);
+                if (extra < 0) {
+                    throw new IOException("Missing ZIP64 extra field at entry " + i);
+                }
+                int field = extra + 4;
+                if (size == ZIP64_MAGIC) {
+                    size = cd.getLong(field);
+                    field += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC) {
+                    compressedSize = cd.getLong(field);
+                    field += 8;
+                }
+                if (localOffset == ZIP64_MAGIC) {
+                    localOffset = cd.getLong(field);
+                }
+            }
+
+            byte[] name = new byte[nameLen];
+            cd.get(pos + 46, name);
+            String entryName = new String(name, (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : LEGACY_NAMES);
+            result.add(new Entry(entryName, method, dosTime, crc,
+                    compressedSize, size, localOffset));
+            pos += 46 + nameLen + extraLen + commentLen;
+        }
+        return result;
+    }
+
+    /**
+     * Position of the extra field with the given id (at its header), or -1.
+     */
+    private static int findExtra(ByteBuffer buf, int start, int length, int id) {
+        int pos = start;
+        int end = start + length;
+        while (pos + 4 <= end) {
+            int fieldId = Short.toUnsignedInt(buf.getShort(pos));
+            int fieldLen = Short.toUnsignedInt(buf.getShort(pos + 2));
+            if (fieldId == id) {
+                return pos;
+            }
+            pos += 4 + fieldLen;
+        }
+        return -1;
+    }
+
+    /**
+     * Offset of an entry's data: the local header's name and extra field lengths can differ from the central one.
+     */
+    private long dataOffset(Entry entry) throws IOException {
+        ByteBuffer header = readFully(entry.localHeaderOffset(), 30);
+        if (header.getInt(0) != LOCAL_HEADER_SIG) {
+            throw new IOException("Corrupt local header for " + entry.name());
+        }
+        return entry.localHeaderOffset() + 30 + Short.toUnsignedInt(header.getShort(26))
+                + Short.toUnsignedInt(header.getShort(28));
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of ZIP file");
+            }
+        }
+        return buf.flip();
+    }
+
+    /**
+     * Reads a byte range of the channel with positional reads, optionally followed by one zero byte.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        private boolean dummyByte;
+
+        RangeInputStream(FileChannel channel, long position, long length, boolean dummyByte) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+            this.dummyByte = dummyByte;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (remaining <= 0) {
+                if (dummyByte) {
+                    dummyByte = false;
+                    b[off] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (n < 0) throw new EOFException("Unexpected end of ZIP entry data");
+            position += n;
+            remaining -= n;
+            return n;
+        }
+    }
+}
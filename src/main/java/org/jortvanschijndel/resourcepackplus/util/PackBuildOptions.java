@@ -0,0 +1,41 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+
+/**
+ * Settings for a single pack build, read from the {@code build} section of config.yml.
+ *
+ * @param reproducible sorted entries, fixed timestamps and pinned compression settings
+ * @param optimizer    optional optimizer stage, or {@code null} when disabled
+ * @param parallelism  threads used to compress entries
+ * @param compression  per-extension compression levels
+ * @param rawCopy      copy compressed entry data from the zipball unchanged instead of re-deflating it
+ */
+public record PackBuildOptions(boolean reproducible, PackOptimizer optimizer, int parallelism,
+                               CompressionPolicy compression, boolean rawCopy) {
+
+    public static final PackBuildOptions DEFAULT = new PackBuildOptions(false, null, 1, CompressionPolicy.DEFAULT, false);
+
+    public static PackBuildOptions fromConfig(ConfigurationSection build) {
+        if (build == null) return DEFAULT;
+
+        PackOptimizer optimizer = null;
+        ConfigurationSection opt = build.getConfigurationSection("optimizer");
+        if (opt != null && opt.getBoolean("enabled", false)) {
+            List<String> exclude = opt.getStringList("exclude");
+            optimizer = new PackOptimizer(exclude, opt.getBoolean("minifyJson", true), opt.getBoolean("recompressPng", true));
+        }
+
+        // 0 = all cores but one, leaving room for the server thread
+        int threads = build.getInt("threads", 0);
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        }
+
+        return new PackBuildOptions(build.getBoolean("reproducible", true), optimizer, threads,
+                CompressionPolicy.fromConfig(build.getConfigurationSection("compression")),
+                build.getBoolean("rawCopy", false));
+    }
+}
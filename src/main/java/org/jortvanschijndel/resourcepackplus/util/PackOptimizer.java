@@ -0,0 +1,243 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Optional build stage that shrinks pack entries while they are repackaged:
+ * strips files matching the exclude list, minifies .json/.mcmeta and losslessly
+ * re-deflates PNG image data. Keeps running totals so the caller can report the savings.
+ */
+public class PackOptimizer {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final List<Pattern> excludes = new ArrayList<>();
+    private final boolean minifyJson;
+    private final boolean recompressPng;
+
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong strippedFiles = new AtomicLong();
+    private final AtomicLong strippedBytes = new AtomicLong();
+
+    /**
+     * @param excludeGlobs glob patterns for entries to drop. Patterns without a slash match the file name
+     *                     at any depth, others match the full path; {@code **} crosses folders.
+     */
+    public PackOptimizer(List<String> excludeGlobs, boolean minifyJson, boolean recompressPng) {
+        for (String glob : excludeGlobs) {
+            if (glob != null && !glob.isBlank()) {
+                excludes.add(globToPattern(glob.trim()));
+            }
+        }
+        this.minifyJson = minifyJson;
+        this.recompressPng = recompressPng;
+    }
+
+    /**
+     * Whether the entry (path relative to the pack root) should be left out of the pack.
+     */
+    public boolean isExcluded(String entryName) {
+        if (entryName.equals("pack.mcmeta")) return false;
+        String trimmed = entryName.endsWith("/") ? entryName.substring(0, entryName.length() - 1) : entryName;
+        String fileName = trimmed.substring(trimmed.lastIndexOf('/') + 1);
+        for (Pattern p : excludes) {
+            if (p.matcher(entryName).matches() || p.matcher(trimmed).matches() || p.matcher(fileName).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a dropped entry so it shows up in the summary.
+     */
+    public void recordStripped(long size) {
+        strippedFiles.incrementAndGet();
+        if (size > 0) strippedBytes.addAndGet(size);
+    }
+
+    /**
+     * Whether {@link #optimize(String, byte[])} would touch this entry; others can be copied through untouched.
+     */
+    public boolean handles(String entryName) {
+        String lower = entryName.toLowerCase(Locale.ROOT);
+        return (minifyJson && (lower.endsWith(".json") || lower.endsWith(".mcmeta")))
+                || (recompressPng && lower.endsWith(".png"));
+    }
+
+    /**
+     * Returns the optimized bytes of an entry, or the original bytes when nothing smaller could be produced.
+     */
+    public byte[] optimize(String entryName, byte[] data) {
+        String lower = entryName.toLowerCase(Locale.ROOT);
+        byte[] result = data;
+        if (minifyJson && (lower.endsWith(".json") || lower.endsWith(".mcmeta"))) {
+            result = minifyJson(data);
+        } else if (recompressPng && lower.endsWith(".png")) {
+            result = recompressPng(data);
+        }
+        if (result.length >= data.length) {
+            result = data;
+        }
+        bytesIn.addAndGet(data.length);
+        bytesOut.addAndGet(result.length);
+        return result;
+    }
+
+    /**
+     * Total bytes removed by stripping and optimizing so far.
+     */
+    public long getBytesSaved() {
+        return strippedBytes.get() + bytesIn.get() - bytesOut.get();
+    }
+
+    public long getStrippedFiles() {
+        return strippedFiles.get();
+    }
+
+    public String summary() {
+        return "saved " + getBytesSaved() + " bytes (" + strippedFiles.get() + " files stripped, "
+                + (bytesIn.get() - bytesOut.get()) + " bytes from minify/recompress)";
+    }
+
+    private static byte[] minifyJson(byte[] data) {
+        try {
+            String text = new String(data, StandardCharsets.UTF_8);
+            if (!text.isEmpty() && text.charAt(0) == '\uFEFF') {
+                text = text.substring(1);
+            }
+            JsonElement element = JsonParser.parseString(text);
+            return element.toString().getBytes(StandardCharsets.UTF_8);
+        } catch (JsonParseException | StackOverflowError e) {
+            // Leave files Minecraft might still accept but we cannot parse as they are
+            return data;
+        }
+    }
+
+    /**
+     * Re-deflates the image data of a PNG at maximum compression. Scanlines and filters are kept as-is,
+     * so decoded pixels are identical; only text and timestamp chunks are dropped.
+     */
+    private static byte[] recompressPng(byte[] data) {
+        if (data.length < PNG_SIGNATURE.length + 12) return data;
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (data[i] != PNG_SIGNATURE[i]) return data;
+        }
+
+        try {
+            ByteArrayOutputStream idat = new ByteArrayOutputStream();
+            ByteArrayOutputStream before = new ByteArrayOutputStream();
+            ByteArrayOutputStream after = new ByteArrayOutputStream();
+            boolean seenIdat = false;
+
+            int pos = PNG_SIGNATURE.length;
+            while (pos + 12 <= data.length) {
+                int length = readInt(data, pos);
+                if (length < 0 || pos + 12 + length > data.length) return data;
+                String type = new String(data, pos + 4, 4, StandardCharsets.US_ASCII);
+                switch (type) {
+                    case "IDAT" -> {
+                        seenIdat = true;
+                        idat.write(data, pos + 8, length);
+                    }
+                    case "tEXt", "zTXt", "iTXt", "tIME" -> {
+                        // Metadata only, not needed to decode the image
+                    }
+                    default -> (seenIdat ? after : before).write(data, pos, length + 12);
+                }
+                pos += length + 12;
+                if (type.equals("IEND")) break;
+            }
+            if (!seenIdat) return data;
+
+            byte[] raw;
+            try (InflaterInputStream iis = new InflaterInputStream(new ByteArrayInputStream(idat.toByteArray()))) {
+                raw = iis.readAllBytes();
+            }
+
+            byte[] best = deflate(raw, Deflater.DEFAULT_STRATEGY);
+            byte[] filtered = deflate(raw, Deflater.FILTERED);
+            if (filtered.length < best.length) best = filtered;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            out.write(PNG_SIGNATURE);
+            before.writeTo(out);
+            writeChunk(out, "IDAT", best);
+            after.writeTo(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            return data;
+        }
+    }
+
+    private static byte[] deflate(byte[] raw, int strategy) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setStrategy(strategy);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(raw.length / 2 + 64);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater, 65536)) {
+            dos.write(raw);
+        } finally {
+            deflater.end();
+        }
+        return bos.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String type, byte[] payload) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        writeInt(out, payload.length);
+        out.write(typeBytes, 0, 4);
+        out.write(payload, 0, payload.length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(payload);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    private static Pattern globToPattern(String glob) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    sb.append(".*");
+                    i++;
+                } else {
+                    sb.append("[^/]*");
+                }
+            } else if (c == '?') {
+                sb.append("[^/]");
+            } else {
+                sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE);
+    }
+}
@@ -0,0 +1,80 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import net.kyori.adventure.resource.ResourcePackInfo;
+import net.kyori.adventure.resource.ResourcePackRequest;
+import net.kyori.adventure.text.Component;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * A published pack: its name, URL, hash and the request built from them.
+ * Instances are immutable and replaced as a whole, so readers always see a URL and hash
+ * that belong together, and sending the pack on join allocates nothing new.
+ *
+ * @param name pack name from {@code /rpp update}; {@link #DEFAULT} for the unnamed pack
+ * @param id   stable pack UUID derived from the hash, so clients can replace or keep the pack by id
+ */
+public record PackSnapshot(String name, String url, String sha1, UUID id, ResourcePackInfo info, ResourcePackRequest request) {
+
+    /**
+     * Name of the pack built when {@code /rpp update} is given no pack name.
+     */
+    public static final String DEFAULT = "default";
+
+    private static final Pattern NAME = Pattern.compile("^[a-z0-9_-]{1,32}$");
+    private static final Component PROMPT = Component.text("Please download the resource pack!");
+
+    /**
+     * Builds the snapshot for a pack, or returns {@code null} when the URL or hash is missing.
+     */
+    public static PackSnapshot of(String name, String url, String sha1) {
+        if (url == null || url.isBlank() || sha1 == null || sha1.isBlank()) {
+            return null;
+        }
+        UUID id = idFor(sha1);
+        ResourcePackInfo info = ResourcePackInfo.resourcePackInfo()
+                .id(id)
+                .uri(URI.create(url))
+                .hash(sha1)
+                .build();
+        return new PackSnapshot(name, url, sha1, id, info, requestOf(List.of(info)));
+    }
+
+    /**
+     * One request carrying several packs; the client layers later packs on top of earlier ones.
+     */
+    public static ResourcePackRequest requestOf(List<ResourcePackInfo> packs) {
+        return ResourcePackRequest.resourcePackRequest()
+                .packs(packs)
+                .prompt(PROMPT)
+                .required(true)
+                .build();
+    }
+
+    /**
+     * Whether {@code name} can be used as a pack name (lowercase letters, digits, {@code -} and {@code _}).
+     */
+    public static boolean isValidName(String name) {
+        return name != null && NAME.matcher(name).matches();
+    }
+
+    /**
+     * Sub-folder a pack is published to on each host: empty for the default pack, so existing
+     * setups keep their paths, and {@code <name>/} for every other pack.
+     */
+    public static String folderOf(String name) {
+        return DEFAULT.equals(name) ? "" : name + "/";
+    }
+
+    /**
+     * Name-based UUID of a pack hash; the same content always gets the same id.
+     */
+    public static UUID idFor(String sha1) {
+        return UUID.nameUUIDFromBytes(("ResourcepackPlus:" + sha1.toLowerCase(Locale.ROOT)).getBytes(StandardCharsets.UTF_8));
+    }
+}
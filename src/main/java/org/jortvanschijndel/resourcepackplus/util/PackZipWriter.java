@@ -0,0 +1,419 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Minimal ZIP writer that compresses entries on a ForkJoin pool and writes them in the order they were added.
+ * Each entry is fully compressed before its local header is written, so sizes and CRCs go straight into the
+ * header (no data descriptors) and the output does not depend on thread timing.
+ * At most {@code 2 * parallelism} entries and {@link #MAX_BUFFERED_BYTES} of their input are held in memory
+ * at once; entries larger than {@link #LARGE_ENTRY_BYTES} go through {@link #addLargeFile} instead, which
+ * spools them to temporary files on the calling thread.
+ * <p>
+ * ZIP64 records are added only where a value does not fit the classic format (entries of 4 GB or more,
+ * offsets past 4 GB, more than 65535 entries), so ordinary packs are byte-for-byte the same as without it.
+ */
+public class PackZipWriter implements Closeable {
+
+    /**
+     * DOS timestamp of 1980-01-01 00:00, the earliest a ZIP entry can carry.
+     */
+    public static final long DOS_EPOCH = (1L << 21) | (1L << 16);
+
+    /**
+     * Entries larger than this should be added with {@link #addLargeFile} rather than as a byte array.
+     */
+    public static final int LARGE_ENTRY_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Input bytes of queued entries after which the writer waits for the oldest ones before queueing more.
+     */
+    public static final long MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_OF_CENTRAL_SIG = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private final OutputStream out;
+    private final ForkJoinPool pool;
+    private final int window;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final List<CentralRecord> central = new ArrayList<>();
+    private long position;
+    private long bufferedBytes;
+    private boolean closed;
+
+    private record Pending(Future<Prepared> future, long bytes) {}
+
+    private record Prepared(byte[] name, boolean directory, long dosTime, int method, long crc, long size, byte[] data) {}
+
+    private record CentralRecord(byte[] name, boolean directory, long dosTime, int method, long crc,
+                                 long compressedSize, long size, long offset) {}
+
+    /**
+     * @param out         destination, closed together with this writer
+     * @param parallelism worker threads; 1 compresses on the calling thread
+     */
+    public PackZipWriter(OutputStream out, int parallelism) {
+        this.out = out;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.window = Math.max(1, parallelism) * 2;
+    }
+
+    public void addDirectory(String name, long dosTime) throws IOException {
+        String dirName = name.endsWith("/") ? name : name + "/";
+        Prepared dir = new Prepared(dirName.getBytes(StandardCharsets.UTF_8), true, dosTime, STORED, 0, 0, new byte[0]);
+        if (pool == null) {
+            writeEntry(dir);
+            return;
+        }
+        submit(CompletableFuture.completedFuture(dir), 0);
+    }
+
+    /**
+     * Queues a file entry. {@code content} is evaluated on a worker thread, so expensive transforms
+     * of the data (such as the optimizer) run in parallel with compression.
+     *
+     * @param level deflate level, or 0 to store the entry uncompressed
+     * @param size  bytes the entry holds in memory until it is written, counted against {@link #MAX_BUFFERED_BYTES}
+     */
+    public void addFile(String name, long dosTime, int level, long size, Callable<byte[]> content) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        Callable<Prepared> task = () -> compress(nameBytes, dosTime, level, content.call());
+        if (pool == null) {
+            try {
+                writeEntry(task.call());
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            return;
+        }
+        submit(pool.submit(task), size);
+    }
+
+    /**
+     * Writes a file entry of any size without holding it in memory. Queued entries are written first, then
+     * {@code content} is copied to a temporary file, and deflated into a second one, on the calling thread;
+     * once CRC and sizes are known the smaller of the two is written exactly as {@link #addFile} would.
+     *
+     * @param level deflate level, or 0 to store the entry uncompressed
+     */
+    public void addLargeFile(String name, long dosTime, int level, InputStream content) throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        Path stored = Files.createTempFile("rpp-entry", ".tmp");
+        Path deflated = level != 0 ? Files.createTempFile("rpp-entry", ".deflate") : null;
+        Deflater deflater = level != 0 ? new Deflater(level, true) : null;
+        try {
+            CRC32 crc = new CRC32();
+            long size = 0;
+            try (OutputStream storedOut = new BufferedOutputStream(Files.newOutputStream(stored), 65536);
+                 OutputStream deflatedOut = deflater != null
+                         ? new DeflaterOutputStream(Files.newOutputStream(deflated), deflater, 65536)
+                         : OutputStream.nullOutputStream()) {
+                byte[] buf = new byte[65536];
+                int n;
+                while ((n = content.read(buf)) > 0) {
+                    crc.update(buf, 0, n);
+                    storedOut.write(buf, 0, n);
+                    deflatedOut.write(buf, 0, n);
+                    size += n;
+                }
+            }
+
+            // Same rule as compress(): keep the deflated data only if it is smaller
+            int method = deflated != null && Files.size(deflated) < size ? DEFLATED : STORED;
+            Path data = method == DEFLATED ? deflated : stored;
+            long compressedSize = Files.size(data);
+
+            long offset = position;
+            writeLocalHeader(nameBytes, method, dosTime, crc.getValue(), compressedSize, size);
+            position += Files.copy(data, out);
+            central.add(new CentralRecord(nameBytes, false, dosTime, method, crc.getValue(), compressedSize, size, offset));
+        } finally {
+            if (deflater != null) deflater.end();
+            Files.deleteIfExists(stored);
+            if (deflated != null) Files.deleteIfExists(deflated);
+        }
+    }
+
+    /**
+     * Writes an entry whose data is already compressed, copying {@code compressedSize} bytes from
+     * {@code compressedData} unchanged. Queued entries are written first so the order is kept.
+     *
+     * @param method ZIP compression method of the data (0 = STORED, 8 = DEFLATED)
+     */
+    public void addRaw(String name, long dosTime, int method, long crc, long compressedSize, long size,
+                       InputStream compressedData) throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = position;
+        writeLocalHeader(nameBytes, method, dosTime, crc, compressedSize, size);
+
+        byte[] buf = new byte[65536];
+        long remaining = compressedSize;
+        while (remaining > 0) {
+            int n = compressedData.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (n < 0) throw new IOException("Unexpected end of data while copying " + name);
+            out.write(buf, 0, n);
+            remaining -= n;
+        }
+        position += compressedSize;
+
+        central.add(new CentralRecord(nameBytes, false, dosTime, method, crc, compressedSize, size, offset));
+    }
+
+    private void submit(Future<Prepared> future, long bytes) throws IOException {
+        // An entry over the byte budget on its own still goes through, just without company
+        while (!pending.isEmpty() && (pending.size() >= window || bufferedBytes + bytes > MAX_BUFFERED_BYTES)) {
+            writeNext();
+        }
+        pending.add(new Pending(future, bytes));
+        bufferedBytes += bytes;
+    }
+
+    private void writeNext() throws IOException {
+        Pending next = pending.poll();
+        if (next == null) return;
+        bufferedBytes -= next.bytes();
+        try {
+            writeEntry(next.future().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing pack entries", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Failed to compress pack entry: " + cause.getMessage(), cause);
+        }
+    }
+
+    private Prepared compress(byte[] name, long dosTime, int level, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        if (level != 0) {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+                byte[] buf = new byte[65536];
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buf);
+                    bos.write(buf, 0, n);
+                }
+                if (bos.size() < data.length) {
+                    return new Prepared(name, false, dosTime, DEFLATED, crc.getValue(), data.length, bos.toByteArray());
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        // Incompressible (or level 0): store as-is
+        return new Prepared(name, false, dosTime, STORED, crc.getValue(), data.length, data);
+    }
+
+    private void writeEntry(Prepared e) throws IOException {
+        long offset = position;
+        writeLocalHeader(e.name(), e.method(), e.dosTime(), e.crc(), e.data().length, e.size());
+        writeBytes(e.data());
+
+        central.add(new CentralRecord(e.name(), e.directory(), e.dosTime(), e.method(), e.crc(),
+                e.data().length, e.size(), offset));
+    }
+
+    private void writeLocalHeader(byte[] name, int method, long dosTime, long crc, long compressedSize, long size) throws IOException {
+        // The local ZIP64 extra must carry both sizes once either of them is too large
+        boolean zip64 = compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+        writeInt(LOCAL_HEADER_SIG);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT); // version needed to extract
+        writeShort(isAscii(name) ? 0 : FLAG_UTF8);
+        writeShort(method);
+        writeInt((int) dosTime);
+        writeInt((int) crc);
+        writeInt((int) (zip64 ? ZIP64_MAGIC : compressedSize));
+        writeInt((int) (zip64 ? ZIP64_MAGIC : size));
+        writeShort(name.length);
+        writeShort(zip64 ? 20 : 0);   // extra field length
+        writeBytes(name);
+        if (zip64) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(16);
+            writeLong(size);
+            writeLong(compressedSize);
+        }
+    }
+
+    private void writeCentralHeader(CentralRecord r) throws IOException {
+        // Only the values that overflow go into the ZIP64 extra, in this fixed order
+        boolean bigSize = r.size() >= ZIP64_MAGIC;
+        boolean bigCompressed = r.compressedSize() >= ZIP64_MAGIC;
+        boolean bigOffset = r.offset() >= ZIP64_MAGIC;
+        int extraData = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+        int version = extraData > 0 ? VERSION_ZIP64 : VERSION_DEFAULT;
+
+        writeInt(CENTRAL_HEADER_SIG);
+        writeShort(version);          // version made by
+        writeShort(version);          // version needed to extract
+        writeShort(isAscii(r.name()) ? 0 : FLAG_UTF8);
+        writeShort(r.method());
+        writeInt((int) r.dosTime());
+        writeInt((int) r.crc());
+        writeInt((int) (bigCompressed ? ZIP64_MAGIC : r.compressedSize()));
+        writeInt((int) (bigSize ? ZIP64_MAGIC : r.size()));
+        writeShort(r.name().length);
+        writeShort(extraData > 0 ? extraData + 4 : 0); // extra field length
+        writeShort(0);                // comment length
+        writeShort(0);                // disk number start
+        writeShort(0);                // internal attributes
+        writeInt(r.directory() ? 0x10 : 0); // external attributes (MS-DOS directory bit)
+        writeInt((int) (bigOffset ? ZIP64_MAGIC : r.offset()));
+        writeBytes(r.name());
+        if (extraData > 0) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(extraData);
+            if (bigSize) writeLong(r.size());
+            if (bigCompressed) writeLong(r.compressedSize());
+            if (bigOffset) writeLong(r.offset());
+        }
+    }
+
+    /**
+     * Writes every queued entry, the central directory and the end record, then closes the output.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+
+            long centralStart = position;
+            for (CentralRecord r : central) {
+                writeCentralHeader(r);
+            }
+            long centralSize = position - centralStart;
+
+            boolean zip64 = central.size() >= ZIP64_MAGIC_COUNT || centralSize >= ZIP64_MAGIC || centralStart >= ZIP64_MAGIC;
+            if (zip64) {
+                long zip64EndStart = position;
+                writeInt(ZIP64_END_OF_CENTRAL_SIG);
+                writeLong(44);            // size of the rest of this record
+                writeShort(VERSION_ZIP64); // version made by
+                writeShort(VERSION_ZIP64); // version needed to extract
+                writeInt(0);              // this disk
+                writeInt(0);              // disk with the central directory
+                writeLong(central.size());
+                writeLong(central.size());
+                writeLong(centralSize);
+                writeLong(centralStart);
+
+                writeInt(ZIP64_LOCATOR_SIG);
+                writeInt(0);              // disk with the ZIP64 end record
+                writeLong(zip64EndStart);
+                writeInt(1);              // total disks
+            }
+
+            writeInt(END_OF_CENTRAL_SIG);
+            writeShort(0);
+            writeShort(0);
+            writeShort(zip64 ? ZIP64_MAGIC_COUNT : central.size());
+            writeShort(zip64 ? ZIP64_MAGIC_COUNT : central.size());
+            writeInt((int) (zip64 ? ZIP64_MAGIC : centralSize));
+            writeInt((int) (zip64 ? ZIP64_MAGIC : centralStart));
+            writeShort(0);                // comment length
+        } finally {
+            if (pool != null) {
+                pending.forEach(p -> p.future().cancel(true));
+                pool.shutdownNow();
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Converts a Java timestamp to a DOS date/time in the local time zone, as {@link java.util.zip.ZipEntry} does.
+     */
+    public static long toDosTime(long millis) {
+        if (millis < 0) return DOS_EPOCH;
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (t.getYear() < 1980) return DOS_EPOCH;
+        if (t.getYear() > 2107) t = LocalDateTime.of(2107, 12, 31, 23, 59, 58);
+        return ((long) (t.getYear() - 1980) << 25) | ((long) t.getMonthValue() << 21) | ((long) t.getDayOfMonth() << 16)
+                | ((long) t.getHour() << 11) | ((long) t.getMinute() << 5) | (t.getSecond() >> 1);
+    }
+
+    private static boolean isAscii(byte[] name) {
+        for (byte b : name) {
+            if (b < 0) return false;
+        }
+        return true;
+    }
+
+    private void writeShort(int v) throws IOException {
+        out.write(v & 0xFF);
+        out.write((v >>> 8) & 0xFF);
+        position += 2;
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.write(v & 0xFF);
+        out.write((v >>> 8) & 0xFF);
+        out.write((v >>> 16) & 0xFF);
+        out.write((v >>> 24) & 0xFF);
+        position += 4;
+    }
+
+    private void writeLong(long v) throws IOException {
+        writeInt((int) v);
+        writeInt((int) (v >>> 32));
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        out.write(b);
+        position += b.length;
+    }
+}
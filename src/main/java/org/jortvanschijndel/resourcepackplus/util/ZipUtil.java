@@ -1,9 +1,12 @@
 package org.jortvanschijndel.resourcepackplus.util;
 
 import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 /**
  * General-purpose ZIP helper.
@@ -15,68 +18,201 @@ public class ZipUtil {
      * Creates a new ZIP file where pack.mcmeta and other files are at the root level.
      */
     public static void repackageZipball(File inputZip, File outputZip) throws IOException {
-        String rootFolder = null;
+        repackageZipball(inputZip, outputZip, PackBuildOptions.DEFAULT);
+    }
 
-        // First pass: find the folder that contains pack.mcmeta
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(inputZip))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (!entry.isDirectory() && entry.getName().endsWith("pack.mcmeta")) {
-                    String path = entry.getName();
-                    int lastSlash = path.lastIndexOf('/');
-                    if (lastSlash >= 0) {
-                        rootFolder = path.substring(0, lastSlash + 1);
-                    } else {
-                        rootFolder = "";
-                    }
-                    break;
+    /**
+     * Repackages a GitHub zipball by removing the top-level folder structure.
+     * When {@code options.reproducible()} is set, entries are written in sorted order with a fixed timestamp,
+     * no extra fields and pinned compression settings, so identical trees give byte-identical zips.
+     * If an optimizer is configured, excluded entries are dropped and the rest optimized while copying.
+     * Entries are compressed per {@code options.compression()} on {@code options.parallelism()} threads
+     * and written in order, unless {@code options.rawCopy()} is set.
+     * The input is read through a {@link PackArchiveIndex}, so locating pack.mcmeta does not scan the archive.
+     */
+    public static void repackageZipball(File inputZip, File outputZip, PackBuildOptions options) throws IOException {
+        repackageZipball(inputZip, outputZip, options, null);
+    }
+
+    /**
+     * Like {@link #repackageZipball(File, File, PackBuildOptions)}, hashing the output while it is written
+     * so the finished zip never has to be read back.
+     *
+     * @param digests fed with every output byte, or {@code null}
+     */
+    public static void repackageZipball(File inputZip, File outputZip, PackBuildOptions options, MultiDigest digests) throws IOException {
+        try (PackArchiveIndex index = new PackArchiveIndex(inputZip);
+             OutputStream out = new FileOutputStream(outputZip);
+             PackZipWriter zos = newWriter(digests != null ? digests.tee(out) : out, options)) {
+
+            // Find the folder that contains pack.mcmeta straight from the central directory
+            String rootFolder = index.findPackRoot();
+            if (rootFolder == null) {
+                throw new IOException("pack.mcmeta not found in zip!");
+            }
+
+            // Strip the root folder prefix; reproducible builds write entries sorted by their new name
+            Map<String, PackArchiveIndex.Entry> renamed = options.reproducible() ? new TreeMap<>() : new LinkedHashMap<>();
+            for (PackArchiveIndex.Entry entry : index.entries()) {
+                if (entry.name().startsWith(rootFolder) && entry.name().length() > rootFolder.length()) {
+                    renamed.putIfAbsent(entry.name().substring(rootFolder.length()), entry);
                 }
             }
-        }
 
-        if (rootFolder == null) {
-            throw new IOException("pack.mcmeta not found in zip!");
+            PackOptimizer optimizer = options.optimizer();
+            for (Map.Entry<String, PackArchiveIndex.Entry> e : renamed.entrySet()) {
+                String newEntryName = e.getKey();
+                PackArchiveIndex.Entry entry = e.getValue();
+
+                boolean optimizerTouches = optimizer != null
+                        && (optimizer.isExcluded(newEntryName) || optimizer.handles(newEntryName));
+                if (options.rawCopy() && !entry.isDirectory() && !optimizerTouches) {
+                    // Copy the compressed bytes and CRC unchanged; only name and offset change
+                    long dosTime = options.reproducible() ? PackZipWriter.DOS_EPOCH : entry.dosTime();
+                    try (InputStream raw = index.openRaw(entry)) {
+                        zos.addRaw(newEntryName, dosTime, entry.method(), entry.crc(), entry.compressedSize(), entry.size(), raw);
+                    }
+                    continue;
+                }
+
+                try (InputStream in = index.openStream(entry)) {
+                    copyEntry(zos, newEntryName, entry.isDirectory(), entry.size(), entry.dosTime(), in, options);
+                }
+            }
         }
+    }
 
-        // Second pass: create new ZIP with corrected structure
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(inputZip));
-             ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(outputZip))) {
+    /**
+     * Single-pass variant of {@link #repackageZipball(File, File)} that reads the zipball straight from
+     * the download stream. The top-level folder GitHub adds is stripped on the fly and the SHA-1 of the
+     * output is computed while it is written, so the archive is never read back from disk.
+     * Requires pack.mcmeta to sit at the repository root.
+     * <p>
+     * In reproducible mode entries keep the zipball order, which git already derives from the sorted
+     * tree, and get the same normalisation as {@link #repackageZipball(File, File, PackBuildOptions)}.
+     *
+     * @param digests fed with the output bytes as they are written
+     * @return hex SHA-1 of the written output zip
+     */
+    public static String repackageZipballStream(InputStream zipball, File outputZip, PackBuildOptions options,
+                                                MultiDigest digests) throws IOException {
+        boolean foundMcmeta = false;
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(zipball, 65536));
+             PackZipWriter zos = newWriter(digests.tee(new FileOutputStream(outputZip)), options)) {
 
+            String rootFolder = null;
             ZipEntry entry;
-            byte[] buffer = new byte[8192];
 
             while ((entry = zis.getNextEntry()) != null) {
                 String entryName = entry.getName();
 
-                // Skip entries that don't start with our root folder
+                // GitHub zipballs have exactly one top-level folder; the first entry tells us which
+                if (rootFolder == null) {
+                    int firstSlash = entryName.indexOf('/');
+                    rootFolder = firstSlash >= 0 ? entryName.substring(0, firstSlash + 1) : "";
+                }
                 if (!entryName.startsWith(rootFolder)) {
                     continue;
                 }
 
-                // Remove the root folder prefix
                 String newEntryName = entryName.substring(rootFolder.length());
-
-                // Skip empty paths (the root folder itself)
                 if (newEntryName.isEmpty()) {
                     continue;
                 }
+                if (newEntryName.equals("pack.mcmeta")) {
+                    foundMcmeta = true;
+                }
 
-                // Create new entry with corrected path
-                ZipEntry newEntry = new ZipEntry(newEntryName);
-                newEntry.setTime(entry.getTime()); // Preserve timestamp
+                copyEntry(zos, newEntryName, entry.isDirectory(), entry.getSize(),
+                        PackZipWriter.toDosTime(entry.getTime()), zis, options);
+            }
+        }
 
-                zos.putNextEntry(newEntry);
+        if (!foundMcmeta) {
+            throw new IOException("pack.mcmeta not found at repository root! Turn off build.streaming for packs in a subfolder.");
+        }
+        return digests.hex(MultiDigest.Kind.SHA1);
+    }
 
-                // Copy file data if it's not a directory
-                if (!entry.isDirectory()) {
-                    int len;
-                    while ((len = zis.read(buffer)) != -1) {
-                        zos.write(buffer, 0, len);
-                    }
+    /**
+     * Builds the pack from loose files instead of a zipball, e.g. a locally kept copy of the source tree.
+     * Keys are entry names relative to the pack root. Entries are written sorted and get the same optimizer,
+     * compression and reproducible treatment as {@link #repackageZipballStream}. Like a zipball, the pack
+     * gets an entry for every folder, so a reproducible build of the same tree is byte-identical either way.
+     *
+     * @param digests fed with the output bytes as they are written
+     * @return hex SHA-1 of the written output zip
+     */
+    public static String packFiles(Map<String, File> files, File outputZip, PackBuildOptions options,
+                                   MultiDigest digests) throws IOException {
+        // Folders map to null; sorted, each folder comes right before its contents as in a zipball
+        Map<String, File> entries = new TreeMap<>(files);
+        for (String name : files.keySet()) {
+            for (int slash = name.indexOf('/'); slash >= 0; slash = name.indexOf('/', slash + 1)) {
+                entries.putIfAbsent(name.substring(0, slash + 1), null);
+            }
+        }
+
+        long dosTime = PackZipWriter.toDosTime(System.currentTimeMillis());
+        try (PackZipWriter zos = newWriter(digests.tee(new FileOutputStream(outputZip)), options)) {
+            for (Map.Entry<String, File> e : entries.entrySet()) {
+                if (e.getValue() == null) {
+                    copyEntry(zos, e.getKey(), true, 0, dosTime, InputStream.nullInputStream(), options);
+                    continue;
+                }
+                try (InputStream in = new FileInputStream(e.getValue())) {
+                    copyEntry(zos, e.getKey(), false, e.getValue().length(), dosTime, in, options);
                 }
+            }
+        }
+        return digests.hex(MultiDigest.Kind.SHA1);
+    }
 
-                zos.closeEntry();
+    /**
+     * Writes one source entry under its new name, applying the optimizer when configured.
+     * The entry data is read here; optimizing and compressing happen on the writer's workers.
+     * Entries larger than {@link PackZipWriter#LARGE_ENTRY_BYTES} are streamed through the writer
+     * without the optimizer instead. The check reads the data rather than trusting {@code size},
+     * which a streamed zipball may not know, so every build path makes the same choice.
+     */
+    private static void copyEntry(PackZipWriter zos, String newEntryName, boolean directory, long size, long sourceDosTime,
+                                  InputStream in, PackBuildOptions options) throws IOException {
+        PackOptimizer optimizer = options.optimizer();
+        if (optimizer != null && optimizer.isExcluded(newEntryName)) {
+            if (!directory) {
+                optimizer.recordStripped(size);
             }
+            return;
+        }
+
+        // Reproducible builds drop the source timestamp
+        long dosTime = options.reproducible() ? PackZipWriter.DOS_EPOCH : sourceDosTime;
+        if (directory) {
+            zos.addDirectory(newEntryName, dosTime);
+            return;
+        }
+
+        int level = options.compression().levelFor(newEntryName);
+        byte[] data = in.readNBytes(PackZipWriter.LARGE_ENTRY_BYTES + 1);
+        if (data.length > PackZipWriter.LARGE_ENTRY_BYTES) {
+            zos.addLargeFile(newEntryName, dosTime, level, new SequenceInputStream(new ByteArrayInputStream(data), in));
+        } else if (optimizer != null && optimizer.handles(newEntryName)) {
+            zos.addFile(newEntryName, dosTime, level, data.length, () -> optimizer.optimize(newEntryName, data));
+        } else {
+            zos.addFile(newEntryName, dosTime, level, data.length, () -> data);
+        }
+    }
+
+    private static PackZipWriter newWriter(OutputStream out, PackBuildOptions options) {
+        return new PackZipWriter(new BufferedOutputStream(out, 65536), options.parallelism());
+    }
+
+    /**
+     * Number of entries in a zip, read from its central directory.
+     */
+    public static int countEntries(File zip) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            return zipFile.size();
         }
     }
 
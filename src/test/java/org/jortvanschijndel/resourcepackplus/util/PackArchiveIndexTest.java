@@ -0,0 +1,130 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reads archives written by {@link ZipOutputStream}, the way GitHub zipballs are laid out.
+ */
+class PackArchiveIndexTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void readsEntriesAndFindsPackRoot() throws IOException {
+        byte[] mcmeta = "{\"pack\":{\"pack_format\":34}}".getBytes(StandardCharsets.UTF_8);
+        byte[] texture = new byte[1000];
+        File zip = new File(dir, "zipball.zip");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip))) {
+            directory(zos, "owner-repo-abc/");
+            file(zos, "owner-repo-abc/README.md", "readme".getBytes(StandardCharsets.UTF_8), ZipEntry.DEFLATED);
+            file(zos, "owner-repo-abc/pack/pack.mcmeta", mcmeta, ZipEntry.DEFLATED);
+            file(zos, "owner-repo-abc/pack/assets/x.png", texture, ZipEntry.STORED);
+            file(zos, "owner-repo-abc/pack/assets/nested/pack.mcmeta", mcmeta, ZipEntry.DEFLATED);
+        }
+
+        try (PackArchiveIndex index = new PackArchiveIndex(zip)) {
+            assertEquals(5, index.size());
+            assertTrue(index.entries().getFirst().isDirectory());
+            assertEquals("owner-repo-abc/pack/", index.findPackRoot());
+
+            PackArchiveIndex.Entry entry = index.getEntry("owner-repo-abc/pack/pack.mcmeta");
+            assertEquals(ZipEntry.DEFLATED, entry.method());
+            assertEquals(mcmeta.length, entry.size());
+            assertArrayEquals(mcmeta, readAll(index.openStream(entry)));
+
+            PackArchiveIndex.Entry stored = index.getEntry("owner-repo-abc/pack/assets/x.png");
+            assertArrayEquals(texture, readAll(index.openStream(stored)));
+            assertArrayEquals(texture, readAll(index.openRaw(stored)));
+            assertNull(index.getEntry("missing"));
+        }
+    }
+
+    @Test
+    void namesFollowTheUtf8Flag() throws IOException {
+        File utf8 = new File(dir, "utf8.zip");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(utf8), StandardCharsets.UTF_8)) {
+            file(zos, "café/blöck.json", new byte[]{1}, ZipEntry.DEFLATED);
+        }
+        // Without the UTF-8 flag names are in the IBM PC code page
+        File legacy = new File(dir, "legacy.zip");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(legacy), Charset.forName("IBM437"))) {
+            file(zos, "café/blöck.json", new byte[]{1}, ZipEntry.DEFLATED);
+        }
+
+        try (PackArchiveIndex index = new PackArchiveIndex(utf8)) {
+            assertNotNull(index.getEntry("café/blöck.json"));
+        }
+        try (PackArchiveIndex index = new PackArchiveIndex(legacy)) {
+            assertNotNull(index.getEntry("café/blöck.json"));
+        }
+    }
+
+    @Test
+    void readsZip64Archives() throws IOException {
+        // ZipOutputStream switches to ZIP64 end records past 65535 entries
+        int count = 70_000;
+        File zip = new File(dir, "many.zip");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip))) {
+            file(zos, "owner-repo-abc/pack.mcmeta", "{}".getBytes(StandardCharsets.UTF_8), ZipEntry.DEFLATED);
+            for (int i = 0; i < count; i++) {
+                file(zos, "owner-repo-abc/f/" + i + ".txt", Integer.toString(i).getBytes(StandardCharsets.UTF_8), ZipEntry.DEFLATED);
+            }
+        }
+
+        try (PackArchiveIndex index = new PackArchiveIndex(zip)) {
+            assertEquals(count + 1, index.size());
+            assertEquals("owner-repo-abc/", index.findPackRoot());
+            PackArchiveIndex.Entry last = index.getEntry("owner-repo-abc/f/69999.txt");
+            assertEquals("69999", new String(readAll(index.openStream(last)), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void rejectsNonZipFiles() throws IOException {
+        File notZip = new File(dir, "not.zip");
+        try (FileOutputStream out = new FileOutputStream(notZip)) {
+            out.write("not a zip file".getBytes(StandardCharsets.UTF_8));
+        }
+        assertThrows(IOException.class, () -> new PackArchiveIndex(notZip).close());
+    }
+
+    private static void directory(ZipOutputStream zos, String name) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.closeEntry();
+    }
+
+    private static void file(ZipOutputStream zos, String name, byte[] data, int method) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        zos.putNextEntry(entry);
+        zos.write(data);
+        zos.closeEntry();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+}
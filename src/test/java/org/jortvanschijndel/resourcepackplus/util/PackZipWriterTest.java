@@ -0,0 +1,203 @@
+package org.jortvanschijndel.resourcepackplus.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes archives with {@link PackZipWriter} and reads them back with {@link ZipFile}.
+ */
+class PackZipWriterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void storedAndDeflatedEntriesRoundTrip() throws IOException {
+        byte[] json = "{\"pack\":{\"pack_format\":34}}".repeat(50).getBytes(StandardCharsets.UTF_8);
+        byte[] noise = random(4096);
+        File zip = new File(dir, "pack.zip");
+        try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(zip), 1)) {
+            writer.addFile("pack.mcmeta", PackZipWriter.DOS_EPOCH, 9, json.length, () -> json);
+            writer.addFile("stored.json", PackZipWriter.DOS_EPOCH, 0, json.length, () -> json);
+            writer.addFile("noise.png", PackZipWriter.DOS_EPOCH, 9, noise.length, () -> noise);
+        }
+
+        try (ZipFile zf = new ZipFile(zip)) {
+            assertEquals(3, zf.size());
+            assertEquals(ZipEntry.DEFLATED, zf.getEntry("pack.mcmeta").getMethod());
+            assertEquals(ZipEntry.STORED, zf.getEntry("stored.json").getMethod());
+            // Data that does not shrink is stored even when a level is given
+            assertEquals(ZipEntry.STORED, zf.getEntry("noise.png").getMethod());
+            assertArrayEquals(json, read(zf, "pack.mcmeta"));
+            assertArrayEquals(json, read(zf, "stored.json"));
+            assertArrayEquals(noise, read(zf, "noise.png"));
+        }
+    }
+
+    @Test
+    void parallelWritesKeepOrder() throws IOException {
+        File zip = new File(dir, "parallel.zip");
+        try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(zip), 4)) {
+            for (int i = 0; i < 200; i++) {
+                byte[] data = ("entry " + i).repeat(i + 1).getBytes(StandardCharsets.UTF_8);
+                writer.addFile("e" + i + ".json", PackZipWriter.DOS_EPOCH, 6, data.length, () -> data);
+            }
+        }
+
+        try (ZipFile zf = new ZipFile(zip)) {
+            int i = 0;
+            for (ZipEntry entry : Collections.list(zf.entries())) {
+                assertEquals("e" + i + ".json", entry.getName());
+                assertEquals(("entry " + i).repeat(i + 1), new String(read(zf, entry.getName()), StandardCharsets.UTF_8));
+                i++;
+            }
+            assertEquals(200, i);
+        }
+    }
+
+    @Test
+    void rawCopyKeepsCompressedData() throws IOException {
+        byte[] data = "raw copied model ".repeat(200).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflate(data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        File zip = new File(dir, "raw.zip");
+        try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(zip), 2)) {
+            writer.addFile("before.json", PackZipWriter.DOS_EPOCH, 6, data.length, () -> data);
+            writer.addRaw("raw.json", PackZipWriter.DOS_EPOCH, ZipEntry.DEFLATED, crc.getValue(),
+                    compressed.length, data.length, new ByteArrayInputStream(compressed));
+            writer.addRaw("raw-stored.json", PackZipWriter.DOS_EPOCH, ZipEntry.STORED, crc.getValue(),
+                    data.length, data.length, new ByteArrayInputStream(data));
+        }
+
+        try (ZipFile zf = new ZipFile(zip)) {
+            assertEquals("before.json", Collections.list(zf.entries()).getFirst().getName());
+            ZipEntry raw = zf.getEntry("raw.json");
+            assertEquals(compressed.length, raw.getCompressedSize());
+            assertEquals(crc.getValue(), raw.getCrc());
+            assertArrayEquals(data, read(zf, "raw.json"));
+            assertArrayEquals(data, read(zf, "raw-stored.json"));
+        }
+    }
+
+    @Test
+    void utf8NamesAndDirectories() throws IOException {
+        byte[] data = "{}".getBytes(StandardCharsets.UTF_8);
+        File zip = new File(dir, "names.zip");
+        try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(zip), 1)) {
+            writer.addDirectory("assets", PackZipWriter.DOS_EPOCH);
+            writer.addDirectory("assets/café/", PackZipWriter.DOS_EPOCH);
+            writer.addFile("assets/café/blöck_☃.json", PackZipWriter.DOS_EPOCH, 6, data.length, () -> data);
+        }
+
+        try (ZipFile zf = new ZipFile(zip, StandardCharsets.ISO_8859_1)) {
+            // The UTF-8 flag must win over the charset the reader was opened with
+            assertTrue(zf.getEntry("assets/").isDirectory());
+            assertTrue(zf.getEntry("assets/café/").isDirectory());
+            assertArrayEquals(data, read(zf, "assets/café/blöck_☃.json"));
+        }
+    }
+
+    @Test
+    void moreThan65535EntriesUseZip64() throws IOException {
+        int count = 70_000;
+        File zip = new File(dir, "many.zip");
+        try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(zip), 1)) {
+            for (int i = 0; i < count; i++) {
+                byte[] data = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+                writer.addFile("f/" + i + ".txt", PackZipWriter.DOS_EPOCH, 0, data.length, () -> data);
+            }
+        }
+
+        try (ZipFile zf = new ZipFile(zip)) {
+            assertEquals(count, zf.size());
+            assertEquals("69999", new String(read(zf, "f/69999.txt"), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void reproducibleOutput() throws IOException {
+        byte[] data = "same bytes ".repeat(100).getBytes(StandardCharsets.UTF_8);
+        File a = new File(dir, "a.zip");
+        File b = new File(dir, "b.zip");
+        for (File zip : new File[]{a, b}) {
+            try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(zip), zip == a ? 1 : 4)) {
+                writer.addDirectory("assets/", PackZipWriter.DOS_EPOCH);
+                writer.addFile("assets/x.json", PackZipWriter.DOS_EPOCH, 9, data.length, () -> data);
+            }
+        }
+        assertArrayEquals(Files.readAllBytes(a.toPath()), Files.readAllBytes(b.toPath()));
+    }
+
+    @Test
+    void largeFilesMatchBufferedEntries() throws IOException {
+        byte[] json = "{\"parent\":\"block/cube_all\"} ".repeat(20_000).getBytes(StandardCharsets.UTF_8);
+        byte[] noise = random(300_000);
+        File buffered = new File(dir, "buffered.zip");
+        File streamed = new File(dir, "streamed.zip");
+        try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(buffered), 4)) {
+            writer.addFile("a.json", PackZipWriter.DOS_EPOCH, 9, json.length, () -> json);
+            writer.addFile("b.ogg", PackZipWriter.DOS_EPOCH, 9, noise.length, () -> noise);
+            writer.addFile("c.json", PackZipWriter.DOS_EPOCH, 0, json.length, () -> json);
+        }
+        try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(streamed), 4)) {
+            writer.addFile("a.json", PackZipWriter.DOS_EPOCH, 9, json.length, () -> json);
+            writer.addLargeFile("b.ogg", PackZipWriter.DOS_EPOCH, 9, new ByteArrayInputStream(noise));
+            writer.addLargeFile("c.json", PackZipWriter.DOS_EPOCH, 0, new ByteArrayInputStream(json));
+        }
+        assertArrayEquals(Files.readAllBytes(buffered.toPath()), Files.readAllBytes(streamed.toPath()));
+
+        try (PackZipWriter writer = new PackZipWriter(new FileOutputStream(streamed), 1)) {
+            writer.addLargeFile("a.json", PackZipWriter.DOS_EPOCH, 9, new ByteArrayInputStream(json));
+        }
+        try (ZipFile zf = new ZipFile(streamed)) {
+            assertEquals(ZipEntry.DEFLATED, zf.getEntry("a.json").getMethod());
+            assertArrayEquals(json, read(zf, "a.json"));
+        }
+    }
+
+    private static byte[] read(ZipFile zf, String name) throws IOException {
+        ZipEntry entry = zf.getEntry(name);
+        assertNotNull(entry, name);
+        try (InputStream in = zf.getInputStream(entry)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(6, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+}